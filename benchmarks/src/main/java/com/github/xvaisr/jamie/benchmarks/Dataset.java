@@ -0,0 +1,81 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.benchmarks;
+
+import java.awt.Rectangle;
+import java.util.Random;
+
+/**
+ * Distributions of rectangles used by benchmarks. All datasets lie in a square world
+ * of side {@code WORLD} and are generated from fixed seed, so every run of a benchmark
+ * sees exactly the same data.
+ * @author Roman Vais
+ */
+public enum Dataset {
+
+    /** Positions spread evenly over the whole world. */
+    UNIFORM,
+    /** Positions gathered in gaussian clusters around few centres. */
+    CLUSTERED,
+    /** Positions crowded towards one corner, density falls with a power of distance. */
+    SKEWED;
+
+    public static final int WORLD = 1 << 20;
+    public static final int MAX_SIZE = 64;
+
+    private static final int CLUSTERS = 50;
+    private static final double CLUSTER_SPREAD = WORLD / 200.0;
+    private static final double SKEW = 4;
+
+    /**
+     * Generates rectangles of this distribution.
+     * @param count - number of rectangles
+     * @param seed - seed of random generator
+     * @return array of generated rectangles
+     */
+    public Rectangle[] generate(int count, long seed) {
+        Random random = new Random(seed);
+        int[] centreX = new int[CLUSTERS];
+        int[] centreY = new int[CLUSTERS];
+        for (int i = 0; i < CLUSTERS; i++) {
+            centreX[i] = random.nextInt(WORLD);
+            centreY[i] = random.nextInt(WORLD);
+        }
+
+        Rectangle[] data = new Rectangle[count];
+        for (int i = 0; i < count; i++) {
+            int x, y;
+            switch (this) {
+                case CLUSTERED:
+                    int c = random.nextInt(CLUSTERS);
+                    x = (int) (centreX[c] + random.nextGaussian() * CLUSTER_SPREAD);
+                    y = (int) (centreY[c] + random.nextGaussian() * CLUSTER_SPREAD);
+                    break;
+                case SKEWED:
+                    x = (int) (WORLD * Math.pow(random.nextDouble(), SKEW));
+                    y = (int) (WORLD * Math.pow(random.nextDouble(), SKEW));
+                    break;
+                default:
+                    x = random.nextInt(WORLD);
+                    y = random.nextInt(WORLD);
+            }
+            x = Math.max(0, Math.min(WORLD - MAX_SIZE, x));
+            y = Math.max(0, Math.min(WORLD - MAX_SIZE, y));
+            data[i] = new Rectangle(x, y, 1 + random.nextInt(MAX_SIZE), 1 + random.nextInt(MAX_SIZE));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.benchmarks;
+
+import com.github.xvaisr.jamie.tools.algorithms.rtree.LinearSplit;
+import com.github.xvaisr.jamie.tools.algorithms.rtree.QuadraticSplit;
+import com.github.xvaisr.jamie.tools.algorithms.rtree.Rtree;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of basic R-tree operations on a tree built by one-by-one insertion, so
+ * the shape of the tree is the one given by chosen split strategy and fanout.
+ * Queries and moves keep the tree unchanged and are measured as throughput. Inserts
+ * and deletes change the tree, so they run in batches of {@code BATCH} operations
+ * after which the change is undone outside of measured time, and time per operation
+ * is reported instead. Run through {@code BenchmarkRunner} to get allocation rate
+ * as well.
+ * @author Roman Vais
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RtreeBenchmark {
+
+    public static enum Split {
+        LINEAR, QUADRATIC, RSTAR
+    }
+
+    public static final int BATCH = 1000;
+
+    private static final int QUERIES = 1024;
+    private static final int WINDOW = 2048;
+    private static final long SEED = 0x5EED;
+
+    @Param({"UNIFORM", "CLUSTERED", "SKEWED"})
+    public Dataset dataset;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"4:16", "4:30", "16:64"})
+    public String fanout;
+
+    @Param({"QUADRATIC", "RSTAR"})
+    public Split split;
+
+    private Rtree<Object> tree;
+    private Object[] objects;
+    private Rectangle[] bounds;
+    private Rectangle[] moved;
+    private Object[] extraObjects;
+    private Rectangle[] extraBounds;
+    private Point[] points;
+    private Rectangle[] windows;
+    private int inserted;
+    private int deleted;
+    private int moving;
+    private int query;
+
+    @Setup(Level.Trial)
+    public void build() {
+        int colon = this.fanout.indexOf(':');
+        int min = Integer.parseInt(this.fanout.substring(0, colon));
+        int max = Integer.parseInt(this.fanout.substring(colon + 1));
+        switch (this.split) {
+            case LINEAR:
+                this.tree = new Rtree(min, max, new LinearSplit());
+                break;
+            case QUADRATIC:
+                this.tree = new Rtree(min, max, new QuadraticSplit());
+                break;
+            default:
+                this.tree = new Rtree(min, max, Rtree.Mode.RSTAR);
+        }
+
+        this.bounds = this.dataset.generate(this.size, SEED);
+        this.objects = new Object[this.size];
+        this.moved = new Rectangle[this.size];
+        for (int i = 0; i < this.size; i++) {
+            this.objects[i] = new Object();
+            this.moved[i] = new Rectangle(this.bounds[i]);
+            this.tree.Insert(this.objects[i], this.bounds[i]);
+        }
+
+        this.extraBounds = this.dataset.generate(BATCH, SEED + 1);
+        this.extraObjects = new Object[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            this.extraObjects[i] = new Object();
+        }
+
+        // queries are placed on the data, so their selectivity follows its density
+        Random random = new Random(SEED + 2);
+        this.points = new Point[QUERIES];
+        this.windows = new Rectangle[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            Rectangle r = this.bounds[random.nextInt(this.size)];
+            this.points[i] = new Point(r.x + r.width / 2, r.y + r.height / 2);
+            this.windows[i] = new Rectangle(r.x + r.width / 2 - WINDOW / 2, r.y + r.height / 2 - WINDOW / 2, WINDOW, WINDOW);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void rewind() {
+        this.inserted = 0;
+        this.deleted = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void undo() {
+        // extra objects are removed again, deleted objects are put back
+        for (int i = 0; i < this.inserted; i++) {
+            this.tree.Delete(this.extraObjects[i]);
+        }
+        for (int i = 0; i < this.deleted; i++) {
+            this.tree.Insert(this.objects[i], this.moved[i]);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void findPoint(Blackhole hole) {
+        hole.consume(this.tree.Find(this.points[this.query++ & (QUERIES - 1)]));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void findRectangle(Blackhole hole) {
+        hole.consume(this.tree.Find(this.windows[this.query++ & (QUERIES - 1)]));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 20, batchSize = BATCH)
+    @Measurement(iterations = 20, batchSize = BATCH)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void insert() {
+        int i = this.inserted++;
+        this.tree.Insert(this.extraObjects[i], this.extraBounds[i]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 20, batchSize = BATCH)
+    @Measurement(iterations = 20, batchSize = BATCH)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void delete() {
+        int i = this.deleted++;
+        this.tree.Delete(this.objects[i]);
+    }
+
+    /**
+     * Moves objects back and forth by the largest object size, every call moves one
+     * object and every second pass over the data returns them where they started.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean move() {
+        int i = this.moving;
+        this.moving = (i + 1 == this.size)? 0 : i + 1;
+        Rectangle r = this.moved[i];
+        r.x += (r.x == this.bounds[i].x)? Dataset.MAX_SIZE : -Dataset.MAX_SIZE;
+        return this.tree.Update(this.objects[i], r);
+    }
+}
@@ -184,10 +184,10 @@ public class Polygon implements Serializable, Cloneable, Shape {
 		LineSegment mineEdge, itsEdge;
 		Iterator<LineSegment> mine, its;
 		mine = this.getEdges().iterator();
-		its = s.getEdges().iterator();
 
 		while (in == false && mine.hasNext()) {
 			mineEdge = mine.next();
+			its = s.getEdges().iterator();
 			while (in == false && its.hasNext()) {
 				itsEdge = its.next();
 
@@ -213,7 +213,7 @@ public class Polygon implements Serializable, Cloneable, Shape {
 		y = set.get(0).y();
 		h = set.get(set.size() - 1).y() - set.get(0).y();
 
-		Point.setSortKey(Point.SortBy.y);
+		Point.setSortKey(Point.SortBy.x);
 		return new Rectangle(new Point(x, y), w, h);
 	}
 
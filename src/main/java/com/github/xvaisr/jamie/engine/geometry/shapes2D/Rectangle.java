@@ -114,7 +114,7 @@ public class Rectangle implements Serializable, Cloneable, Shape {
 
       @Override
 	public boolean contains(Rectangle r) {
-		return this.contains(r.getBottomLeftCorner()) && this.contains(r.getBottomLeftCorner());
+		return this.contains(r.bl) && this.contains(r.tr);
 	}
 
       @Override
@@ -44,8 +44,7 @@ public class Triangle implements Serializable, Cloneable, Shape {
 		this.verticies.add(b);
 		this.verticies.add(c);
 
-		// TODO: compute centroid of this triangle
-		this.centroid = new Point();
+		this.centroid = new Point((a.x() + b.x() + c.x()) / 3, (a.y() + b.y() + c.y()) / 3);
 	}
 
       @Override
@@ -107,10 +106,10 @@ public class Triangle implements Serializable, Cloneable, Shape {
 		LineSegment mineEdge, itsEdge;
 		Iterator<LineSegment> mine, its;
 		mine = this.getEdges().iterator();
-		its = s.getEdges().iterator();
 
 		while (in == false && mine.hasNext()) {
 			mineEdge = mine.next();
+			its = s.getEdges().iterator();
 			while (in == false && its.hasNext()) {
 				itsEdge = its.next();
 
@@ -136,7 +135,7 @@ public class Triangle implements Serializable, Cloneable, Shape {
 		y = set.get(0).y();
 		h = set.get(set.size() - 1).y() - set.get(0).y();
 
-		Point.setSortKey(Point.SortBy.y);
+		Point.setSortKey(Point.SortBy.x);
 		return new Rectangle(new Point(x, y), w, h);
 	}
 
@@ -16,6 +16,7 @@
 package com.github.xvaisr.jamie.engine.geometry.shapes3D;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.github.xvaisr.jamie.engine.geometry.basic.Point;
@@ -42,7 +43,7 @@ public class Cube implements Serializable, Shape3D {
 	}
 
 	public Cube(Point p, Dimension3D d) {
-		this(p, p.translate(d.getWidth(), d.getHeight()));
+		this(p, p.translate(d.getWidth(), d.getHeight(), d.getDepth()));
 	}
 
 	public Cube(Point p, int width, int heigth, int depth) {
@@ -79,38 +80,111 @@ public class Cube implements Serializable, Shape3D {
 		this.trf = new Point(xt, yt, zt);
 	}
 
+	/**
+	 * Returns corner of the cube with the lowest coordinates.
+	 *
+	 * @return bottom left near corner
+	 */
+	public Point getBottomLeftNear() {
+		return this.bln;
+	}
+
+	/**
+	 * Returns corner of the cube with the highest coordinates.
+	 *
+	 * @return top right far corner
+	 */
+	public Point getTopRightFar() {
+		return this.trf;
+	}
+
+	public int getWidth() {
+		return this.trf.x() - this.bln.x();
+	}
+
+	public int getHeight() {
+		return this.trf.y() - this.bln.y();
+	}
+
+	public int getDepth() {
+		return this.trf.z() - this.bln.z();
+	}
+
+	/**
+	 * Tests whether point lies inside of the cube or on its boundary.
+	 *
+	 * @param p
+	 *            - tested point
+	 * @return true if point lies in the cube
+	 */
       @Override
 	public boolean contains(Point p) {
-		throw new UnsupportedOperationException("Not supported yet.");
+		return p.x() >= this.bln.x() && p.x() <= this.trf.x() &&
+			p.y() >= this.bln.y() && p.y() <= this.trf.y() &&
+			p.z() >= this.bln.z() && p.z() <= this.trf.z();
 	}
 
       @Override
 	public boolean contains(Cube c) {
-		throw new UnsupportedOperationException("Not supported yet.");
+		return this.contains(c.bln) && this.contains(c.trf);
 	}
 
+	/**
+	 * Tests whether shape lies inside of the cube. Cube is aligned with the
+	 * axis, so it contains the shape exactly when it contains shape's
+	 * bounding cube.
+	 *
+	 * @param s
+	 *            - tested shape
+	 * @return true if whole shape lies in the cube
+	 */
       @Override
 	public boolean contains(Shape3D s) {
-		throw new UnsupportedOperationException("Not supported yet.");
+		return this.contains(s.getBoundingCube());
 	}
 
+	/**
+	 * Tests whether cubes have at least one common point, touching cubes
+	 * intersect.
+	 *
+	 * @param c
+	 *            - tested cube
+	 * @return true if cubes intersect
+	 */
       @Override
 	public boolean intersects(Cube c) {
-		throw new UnsupportedOperationException("Not supported yet.");
+		return this.bln.x() <= c.trf.x() && c.bln.x() <= this.trf.x() &&
+			this.bln.y() <= c.trf.y() && c.bln.y() <= this.trf.y() &&
+			this.bln.z() <= c.trf.z() && c.bln.z() <= this.trf.z();
 	}
 
       @Override
 	public boolean intersects(Shape3D s) {
-		throw new UnsupportedOperationException("Not supported yet.");
+		if (s instanceof Cube) {
+			return this.intersects((Cube) s);
+		}
+		return s.intersects(this);
 	}
 
       @Override
 	public Cube getBoundingCube() {
-		throw new UnsupportedOperationException("Not supported yet.");
+		return this;
 	}
 
       @Override
 	public List<Point> getVertices() {
-		throw new UnsupportedOperationException("Not supported yet.");
+		ArrayList<Point> vertices = new ArrayList();
+		for (int i = 0; i < 8; i++) {
+			vertices.add(new Point(
+				((i & 1) == 0)? this.bln.x() : this.trf.x(),
+				((i & 2) == 0)? this.bln.y() : this.trf.y(),
+				((i & 4) == 0)? this.bln.z() : this.trf.z()));
+		}
+		return vertices;
+	}
+
+	@Override
+	public String toString() {
+		return "Cube [" + this.bln + ", " + this.trf + "]";
 	}
 }
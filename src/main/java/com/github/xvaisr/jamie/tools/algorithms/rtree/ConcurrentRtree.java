@@ -0,0 +1,242 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import com.github.xvaisr.jamie.tools.structures.Pair;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * R-tree which can be queried by many threads while another thread modifies it.
+ * Modifications are serialised and applied to private working tree. Queries never touch
+ * the working tree, they read the last published version, an immutable
+ * {@code PackedRtree}, so they neither block nor change any state. Writer decides when
+ * its changes become visible to readers by calling {@code Publish()}, typically once per
+ * simulation tick. Publishing packs the whole working tree, so its cost is linear
+ * in the number of objects.
+ * @author Roman Vais
+ * @param <T>
+ */
+public class ConcurrentRtree<T> {
+
+    /* Snapshot and its number are published as one object, so reader never sees
+       number of new version together with the previous snapshot or vice versa. */
+    private static final class Version<T> {
+        final PackedRtree<T> snapshot;
+        final long number;
+
+        Version(PackedRtree<T> snapshot, long number) {
+            this.snapshot = snapshot;
+            this.number = number;
+        }
+    }
+
+    private final Rtree<T> tree;
+    private final Object lock;
+    private volatile Version<T> published;
+    private boolean changed;
+
+    public ConcurrentRtree() {
+        this(new Rtree());
+    }
+
+    /**
+     * Creates concurrent tree using given tree as working copy. Given tree must not be
+     * used by anyone else afterwards.
+     * @param tree - working tree receiving modifications
+     */
+    public ConcurrentRtree(Rtree<T> tree) {
+        this.tree = tree;
+        this.lock = new Object();
+        this.published = new Version(tree.Freeze(), 0);
+        this.changed = false;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="writer side - serialised">
+    public void Insert(T object, Point p) {
+        synchronized (this.lock) {
+            this.tree.Insert(object, p);
+            this.changed = true;
+        }
+    }
+
+    public void Insert(T object, Rectangle r) {
+        synchronized (this.lock) {
+            this.tree.Insert(object, r);
+            this.changed = true;
+        }
+    }
+
+    public void Insert(T object, Point p, long mask) {
+        synchronized (this.lock) {
+            this.tree.Insert(object, p, mask);
+            this.changed = true;
+        }
+    }
+
+    public void Insert(T object, Rectangle r, long mask) {
+        synchronized (this.lock) {
+            this.tree.Insert(object, r, mask);
+            this.changed = true;
+        }
+    }
+
+    public boolean setMask(T object, long mask) {
+        synchronized (this.lock) {
+            boolean found = this.tree.setMask(object, mask);
+            this.changed |= found;
+            return found;
+        }
+    }
+
+    public boolean Delete(T object, Point p) {
+        synchronized (this.lock) {
+            boolean removed = this.tree.Delete(object, p);
+            this.changed |= removed;
+            return removed;
+        }
+    }
+
+    public boolean Delete(T object) {
+        synchronized (this.lock) {
+            boolean removed = this.tree.Delete(object);
+            this.changed |= removed;
+            return removed;
+        }
+    }
+
+    public boolean Delete(T object, Rectangle r) {
+        synchronized (this.lock) {
+            boolean removed = this.tree.Delete(object, r);
+            this.changed |= removed;
+            return removed;
+        }
+    }
+
+    public ArrayList<T> DeleteAll(Rectangle r, Rtree.Relation relation) {
+        synchronized (this.lock) {
+            ArrayList<T> removed = this.tree.DeleteAll(r, relation);
+            this.changed |= !removed.isEmpty();
+            return removed;
+        }
+    }
+
+    /**
+     * Applies whole batch under single acquisition of the writer lock, the same way as
+     * {@code Rtree.Apply()}.
+     * @param batch - operations to apply
+     */
+    public void Apply(RtreeBatch<T> batch) {
+        synchronized (this.lock) {
+            if (!batch.getIsEmpty()) {
+                this.tree.Apply(batch);
+                this.changed = true;
+            }
+        }
+    }
+
+    public boolean Update(T object, Rectangle newBounds) {
+        synchronized (this.lock) {
+            boolean moved = this.tree.Update(object, newBounds);
+            this.changed |= moved;
+            return moved;
+        }
+    }
+
+    public boolean Update(T object, Rectangle oldBounds, Rectangle newBounds) {
+        synchronized (this.lock) {
+            boolean moved = this.tree.Update(object, oldBounds, newBounds);
+            this.changed |= moved;
+            return moved;
+        }
+    }
+
+    public void Load(Collection<Pair<T, Rectangle>> objects) {
+        synchronized (this.lock) {
+            this.tree.Load(objects);
+            this.changed = true;
+        }
+    }
+
+    public void Load(Collection<Pair<T, Rectangle>> objects, long[] masks) {
+        synchronized (this.lock) {
+            this.tree.Load(objects, masks);
+            this.changed = true;
+        }
+    }
+
+    /**
+     * Makes all modifications done so far visible to readers. Queries started before
+     * publishing finish on the previous version.
+     * @return version number of published snapshot
+     */
+    public long Publish() {
+        synchronized (this.lock) {
+            if (this.changed) {
+                this.published = new Version(this.tree.Freeze(), this.published.number + 1);
+                this.changed = false;
+            }
+            return this.published.number;
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="reader side - lock free">
+    public ArrayList<T> Find(Point p) {
+        return this.published.snapshot.Find(p);
+    }
+
+    public ArrayList<T> Find(Rectangle r) {
+        return this.published.snapshot.Find(r);
+    }
+
+    public boolean Find(Point p, RtreeVisitor<T> visitor) {
+        return this.published.snapshot.Find(p, visitor);
+    }
+
+    public boolean Find(Rectangle r, RtreeVisitor<T> visitor) {
+        return this.published.snapshot.Find(r, visitor);
+    }
+
+    public ArrayList<T> Find(Rectangle r, long mask) {
+        return this.published.snapshot.Find(r, mask);
+    }
+
+    public boolean Find(Rectangle r, long mask, RtreeVisitor<T> visitor) {
+        return this.published.snapshot.Find(r, mask, visitor);
+    }
+
+    /**
+     * Returns last published version of the tree. Reader needing several queries to see
+     * exactly the same data should run all of them on one snapshot.
+     * @return last published snapshot
+     */
+    public PackedRtree<T> getSnapshot() {
+        return this.published.snapshot;
+    }
+
+    /**
+     * Returns version number of last published snapshot. Number grows by one with every
+     * publication which contained some modifications.
+     * @return version of last published snapshot
+     */
+    public long getVersion() {
+        return this.published.number;
+    }
+    // </editor-fold>
+}
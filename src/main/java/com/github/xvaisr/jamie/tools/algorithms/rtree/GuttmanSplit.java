@@ -0,0 +1,146 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import com.github.xvaisr.jamie.tools.structures.Pair;
+import java.util.ArrayList;
+
+/**
+ * Node split as described by Guttman. Quadratic split and linear split are the same,
+ * but use different PickSeeds and PickNext algorithms.
+ * @author Roman Vais
+ */
+abstract class GuttmanSplit implements RtreeSplitPolicy {
+
+    @Override
+    public Pair<RtreeNode, RtreeNode> split(RtreeNode node) {                  // node spliting
+        /*
+          divide a set of M + 1 index enteries in two groups
+         */
+        int min = node.getMinEnteries();
+
+        /*
+          QS1 [Pick first entery of each group] Apply algorithm PickSeeds to
+          choese two enteries to be first elements of groups. Assign each to
+          a group
+         */
+
+        ArrayList<RtreeNode> childList = node.getChildList();
+        Pair<RtreeNode, RtreeNode> pair = this.PickSeeds(childList);
+
+        RtreeNode groupA = new RtreeNode();
+        groupA.setMinEnteries(min);
+        groupA.setMaxEnteries(node.getMaxEnteries());
+        groupA.addChildnode(pair.getA());
+
+        RtreeNode groupB = new RtreeNode();
+        groupB.setMinEnteries(min);
+        groupB.setMaxEnteries(node.getMaxEnteries());
+        groupB.addChildnode(pair.getB());
+
+        /*
+          QS2.1 [check if done] If all enteries have been assigned stop.
+         */
+
+        while (!childList.isEmpty()) {
+
+            /*
+              QS2.2 [check if done] if one group has so few enteries that all
+              the rest must be assignet to it in order to have minimum number
+              m, asign them and stop
+             */
+
+            int requiredA = min - groupA.getChildnodeCount();
+            int requiredB = min - groupB.getChildnodeCount();
+
+            if (requiredA >= childList.size() && requiredB <= 0) {
+                for(RtreeNode m : childList) {
+                    groupA.addChildnode(m);
+                }
+                break;
+            }
+
+            if (requiredB >= childList.size() && requiredA <= 0) {
+                for(RtreeNode m : childList) {
+                    groupB.addChildnode(m);
+                }
+                break;
+            }
+
+            /*
+              QS3 [select entery to be assigned] Invoke algoritm PickNext to choese
+              next entery to assign. Add it to the group with rectangle which will
+              have to enlarge least to acomodate it.
+             */
+
+            RtreeNode next = this.PickNext(childList, groupA, groupB);
+            long da = RtreeGeometry.enlargement(groupA, next);
+            long db = RtreeGeometry.enlargement(groupB, next);
+
+            if (da < db) {
+                groupA.addChildnode(next);
+            }
+            else if (da > db) {
+                groupB.addChildnode(next);
+            }
+            else {
+                /*
+                  resolve ties by adding entery into group:
+                                - with smaller area
+                                - with fewer enteries
+                                - oh, it doesn't matter any more ... pick one!
+                 */
+                long areaA = RtreeGeometry.area(groupA);
+                long areaB = RtreeGeometry.area(groupB);
+
+                if (areaA < areaB) {
+                    groupA.addChildnode(next);
+                }
+                else if (areaA > areaB) {
+                    groupB.addChildnode(next);
+                }
+                else if (groupA.getChildnodeCount() < groupB.getChildnodeCount()) {
+                    groupA.addChildnode(next);
+                }
+                else {
+                    // b has fewer child nodes or it doesnt'n matter anymore
+                    groupB.addChildnode(next);
+                }
+            }
+
+        // repeat from QS2
+        }
+
+        return new Pair(groupA, groupB);
+    }
+
+    /**
+     * Chooses two enteries to be first elements of the two groups and removes them
+     * from the list.
+     * @param list - enteries not yet assigned to any group
+     * @return pair of seeds
+     */
+    protected abstract Pair<RtreeNode, RtreeNode> PickSeeds(ArrayList<RtreeNode> list);
+
+    /**
+     * Chooses entery to be assigned to one of the groups next and removes it from the list.
+     * @param list - enteries not yet assigned to any group
+     * @param groupA - first group being built
+     * @param groupB - second group being built
+     * @return entery to be assigned
+     */
+    protected abstract RtreeNode PickNext(ArrayList<RtreeNode> list, RtreeNode groupA, RtreeNode groupB);
+}
@@ -0,0 +1,367 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+/**
+ * Hilbert R-tree (Kamel, Faloutsos). Children of every node are kept ordered by Hilbert
+ * value of centres of their rectangles, value of a node being the largest value in its
+ * subtree (LHV). New entery is placed into the leaf its value belongs to, like into
+ * B+-tree, instead of descending by the least enlargement. Overflowing node first passes
+ * enteries to its sibling and only when both are full, the two of them are split into
+ * three (2-to-3 split), so nodes are mostly about two thirds full or more. Underflowing
+ * node borrows from its sibling or is merged with it. Clustered data therefore end up in
+ * fuller and less overlapping nodes than with the quadratic split. Unlike {@code Rtree},
+ * root may hold as many children as any other node.
+ * @author Roman Vais
+ * @param <T>
+ */
+public class HilbertRtree<T> {
+
+    private RtreeNode<T> root;
+
+    public HilbertRtree() {
+        this.root = new RtreeNode();
+    }
+
+    public HilbertRtree(int min, int max) {
+        this();
+        this.root.setMinEnteries(min);
+        this.root.setMaxEnteries(max);
+    }
+
+    public ArrayList<T> Find(Point p) {
+        final ArrayList<T> objects = new ArrayList();
+        this.Find(p, new RtreeVisitor<T>() {
+            @Override
+            public boolean visit(T object) {
+                return objects.add(object);
+            }
+        });
+        return objects;
+    }
+
+    public ArrayList<T> Find(Rectangle r) {
+        final ArrayList<T> objects = new ArrayList();
+        this.Find(r, new RtreeVisitor<T>() {
+            @Override
+            public boolean visit(T object) {
+                return objects.add(object);
+            }
+        });
+        return objects;
+    }
+
+    /**
+     * Passes every object whose rectangle contains given point to the visitor.
+     * @param p - point objects must contain
+     * @param visitor - callback receiving found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     */
+    public boolean Find(Point p, RtreeVisitor<T> visitor) {
+        return this.Search(this.root, new Rectangle(p.x, p.y, 1, 1), visitor);
+    }
+
+    /**
+     * Passes every object whose rectangle intersects given rectangle to the visitor.
+     * @param r - rectangle objects must intersect
+     * @param visitor - callback receiving found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     */
+    public boolean Find(Rectangle r, RtreeVisitor<T> visitor) {
+        return this.Search(this.root, r, visitor);
+    }
+
+    /**
+     * Returns iterator streaming objects in order of increasing distance from given point.
+     * @param p - point to which distance is measured
+     * @return iterator over all objects of this tree ordered by distance
+     */
+    public RtreeNearestIterator<T> NearestIterator(Point p) {
+        return new RtreeNearestIterator(this.root, p, Double.POSITIVE_INFINITY);
+    }
+
+    public void Insert(T object, Point p) {
+        RtreeNode<T> entery = new RtreeNode();
+        entery.setContent(object, p);
+        this.Insert(entery);
+    }
+
+    public void Insert(T object, Rectangle r) {
+        RtreeNode<T> entery = new RtreeNode();
+        entery.setContent(object, r);
+        this.Insert(entery);
+    }
+
+    public void Delete(T object, Point p) {
+        this.Delete(object, new Rectangle((p.x - 1), (p.y - 1), 2, 2));
+    }
+
+    public void Delete(T object, Rectangle r) {
+        /*
+          D1 Find leaf L containing entery E, stop if there is none.
+          D2 Remove E from L.
+         */
+        RtreeNode<T> entery = this.FindEntry(this.root, object, r);
+        if (entery == null) {
+            return;
+        }
+        RtreeNode node = entery.getParent();
+        node.detachChild(entery);
+
+        /*
+          D3 If L underflows, borrow enteries from its sibling, or merge L with
+          the sibling when it cannot spare any. Merging removes node from the
+          parent, so repeat for the parent.
+         */
+        while (!node.getIsRoot() && node.getChildnodeCount() < node.getMinEnteries()) {
+            RtreeNode parent = node.getParent();
+            if (parent.getChildnodeCount() < 2) {
+                break;
+            }
+            HilbertRtree.HandleUnderflow(node);
+            node = parent;
+        }
+
+        /*
+          D4 Adjust rectangles on the path to the root, shorten the tree if
+          root was left with single node.
+         */
+        HilbertRtree.AdjustPath(node);
+        if (this.root.getChildnodeCount() == 1 && !this.root.getChildnode(0).getIsEntery()) {
+            this.root.replaceChildList(this.root.getChildnode(0).getChildList());
+        }
+    }
+
+    /**
+     * Creates immutable copy of this tree packed into flat arrays.
+     * @return packed read-only copy of this tree
+     */
+    public PackedRtree<T> Freeze() {
+        return new PackedRtree(this.root);
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="supporting (sub)algorithms - only private methods">
+
+    private void Insert(RtreeNode entery) {
+        long h = RtreeGeometry.hilbertCode(entery);
+
+        /*
+          I1 [Find appropriate leaf] In every node choose child with the least
+          LHV greater than h, or the last child if there is none.
+         */
+        RtreeNode node = this.root;
+        while (node.getChildnodeCount() > 0 && !node.getChildnode(0).getIsEntery()) {
+            node = node.getChildnode(HilbertRtree.Position(node, h, true));
+        }
+
+        /*
+          I2 [Insert E into leaf L] Keep enteries of L ordered, if L overflows
+          invoke HandleOverflow, which may propagate overflow to the parent.
+         */
+        node.insertChildnode(HilbertRtree.Position(node, h, false), entery);
+        while (node != null && node.getChildnodeCount() > node.getMaxEnteries()) {
+            RtreeNode parent = node.getParent();
+            if (parent == null) {
+                this.SplitRoot();
+                break;
+            }
+            HilbertRtree.HandleOverflow(node);
+            node = parent;
+        }
+
+        /*
+          I3 [Adjust tree] Rectangles on the path to the root are adjusted,
+          LHVs need no adjusting since they are read from last children.
+         */
+        HilbertRtree.AdjustPath(node);
+    }
+
+    private static int Position(RtreeNode node, long h, boolean descend) {
+        // binary search for first child with LHV greater than h
+        int low = 0;
+        int high = node.getChildnodeCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(HilbertRtree.Lhv(node.getChildnode(mid)), h) > 0) {
+                high = mid;
+            }
+            else {
+                low = mid + 1;
+            }
+        }
+        return (descend && low == node.getChildnodeCount())? low - 1 : low;
+    }
+
+    private static long Lhv(RtreeNode node) {
+        // children are ordered, so the largest value lies in the last entery
+        while (!node.getIsEntery()) {
+            if (node.getChildnodeCount() == 0) {
+                return 0;
+            }
+            node = node.getChildnode(node.getChildnodeCount() - 1);
+        }
+        return RtreeGeometry.hilbertCode(node);
+    }
+
+    private static void HandleOverflow(RtreeNode node) {
+        /*
+          H1 Let S be set of node N and its cooperating sibling, the right one
+          or the left one for the last child. If N is the only child, node is
+          split in two.
+         */
+        RtreeNode parent = node.getParent();
+        int i = HilbertRtree.IndexOf(parent, node);
+        int j = (i + 1 < parent.getChildnodeCount())? i + 1 : i - 1;
+        if (j < 0) {
+            RtreeNode created = HilbertRtree.CreateNode(node);
+            HilbertRtree.Distribute(new RtreeNode[] {node, created}, node.getChildList());
+            parent.insertChildnode(i + 1, created);
+            return;
+        }
+        RtreeNode first = parent.getChildnode(Math.min(i, j));
+        RtreeNode second = parent.getChildnode(Math.max(i, j));
+
+        /*
+          H2 Collect enteries of all nodes in S keeping their order. If some
+          node in S is not full, distribute them evenly among nodes in S.
+          Otherwise create new node NN and distribute them among S and NN.
+         */
+        ArrayList<RtreeNode> children = first.getChildList();
+        children.addAll(second.getChildList());
+        if (children.size() <= 2 * node.getMaxEnteries()) {
+            HilbertRtree.Distribute(new RtreeNode[] {first, second}, children);
+        }
+        else {
+            RtreeNode created = HilbertRtree.CreateNode(node);
+            HilbertRtree.Distribute(new RtreeNode[] {first, second, created}, children);
+            parent.insertChildnode(Math.max(i, j) + 1, created);
+        }
+    }
+
+    private static void HandleUnderflow(RtreeNode node) {
+        // same as HandleOverflow, but two nodes are merged when they fit in one
+        RtreeNode parent = node.getParent();
+        int i = HilbertRtree.IndexOf(parent, node);
+        int j = (i + 1 < parent.getChildnodeCount())? i + 1 : i - 1;
+        RtreeNode first = parent.getChildnode(Math.min(i, j));
+        RtreeNode second = parent.getChildnode(Math.max(i, j));
+
+        ArrayList<RtreeNode> children = first.getChildList();
+        children.addAll(second.getChildList());
+        if (children.size() >= 2 * node.getMinEnteries()) {
+            HilbertRtree.Distribute(new RtreeNode[] {first, second}, children);
+        }
+        else {
+            first.replaceChildList(children);
+            parent.detachChild(second);
+        }
+    }
+
+    private void SplitRoot() {
+        // root has no siblings, it is split in two and new root is created above
+        RtreeNode a = HilbertRtree.CreateNode(this.root);
+        RtreeNode b = HilbertRtree.CreateNode(this.root);
+        HilbertRtree.Distribute(new RtreeNode[] {a, b}, this.root.getChildList());
+
+        ArrayList<RtreeNode> list = new ArrayList();
+        list.add(a);
+        list.add(b);
+        RtreeNode<T> node = new RtreeNode();
+        node.setMinEnteries(this.root.getMinEnteries());
+        node.setMaxEnteries(this.root.getMaxEnteries());
+        node.replaceChildList(list);
+        this.root = node;
+    }
+
+    private static void Distribute(RtreeNode[] nodes, ArrayList<RtreeNode> children) {
+        // consecutive runs of ordered children, sizes differ at most by one
+        int start = 0;
+        for (int k = 0; k < nodes.length; k++) {
+            int end = (int) ((long) children.size() * (k + 1) / nodes.length);
+            nodes[k].replaceChildList(new ArrayList(children.subList(start, end)));
+            start = end;
+        }
+    }
+
+    private static RtreeNode CreateNode(RtreeNode like) {
+        RtreeNode node = new RtreeNode();
+        node.setMinEnteries(like.getMinEnteries());
+        node.setMaxEnteries(like.getMaxEnteries());
+        return node;
+    }
+
+    private static int IndexOf(RtreeNode parent, RtreeNode child) {
+        int count = parent.getChildnodeCount();
+        for (int i = 0; i < count; i++) {
+            if (parent.getChildnode(i) == child) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void AdjustPath(RtreeNode node) {
+        while (node != null) {
+            node.adjustRectangle();
+            node = node.getParent();
+        }
+    }
+
+    private boolean Search(RtreeNode node, Rectangle r, RtreeVisitor<T> visitor) {
+        int count = node.getChildnodeCount();
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (child.intersects(r)) {
+                if (child.getIsEntery()) {
+                    if (!visitor.visit((T) child.getContent())) {
+                        return false;
+                    }
+                }
+                else if (!this.Search(child, r, visitor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private RtreeNode<T> FindEntry(RtreeNode node, T object, Rectangle r) {
+        int count = node.getChildnodeCount();
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (child.intersects(r)) {
+                if (child.getIsEntery()) {
+                    if (child.getContent() == object) {
+                        return child;
+                    }
+                }
+                else {
+                    RtreeNode<T> entery = this.FindEntry(child, object, r);
+                    if (entery != null) {
+                        return entery;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // </editor-fold>
+}
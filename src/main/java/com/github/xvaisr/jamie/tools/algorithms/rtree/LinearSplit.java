@@ -0,0 +1,94 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import com.github.xvaisr.jamie.tools.structures.Pair;
+import java.util.ArrayList;
+
+/**
+ * Guttman's linear split. Seeds are the two enteries most separated along one of the axes,
+ * remaining enteries are assigned in any order. Cost is linear in number of enteries of
+ * the node, resulting nodes overlap more than with quadratic split.
+ * @author Roman Vais
+ */
+public class LinearSplit extends GuttmanSplit {
+
+    @Override
+    protected Pair<RtreeNode, RtreeNode> PickSeeds(ArrayList<RtreeNode> list) {
+        /*
+          LPS1 [Find extreme rectangles along all dimensions] Along each dimension
+          find the entry whose rectangle has the highest low side and the one
+          with the lowest high side. Record the separation.
+
+          LPS2 [Adjust for shape of the rectangle cluster] Normalize the
+          separations by dividing by the width of the entire set along the
+          corresponding dimension.
+
+          LPS3 [Select the most extreme pair] Choose the pair with the greatest
+          normalized separation along any dimension.
+         */
+        int highLowX = 0, lowHighX = 0, highLowY = 0, lowHighY = 0;
+        long minX = Long.MAX_VALUE, maxX = Long.MIN_VALUE;
+        long minY = Long.MAX_VALUE, maxY = Long.MIN_VALUE;
+
+        int count = list.size();
+        for (int i = 0; i < count; i++) {
+            RtreeNode n = list.get(i);
+
+            if (n.getMinX() > list.get(highLowX).getMinX()) highLowX = i;
+            if (n.getMaxX() < list.get(lowHighX).getMaxX()) lowHighX = i;
+            if (n.getMinY() > list.get(highLowY).getMinY()) highLowY = i;
+            if (n.getMaxY() < list.get(lowHighY).getMaxY()) lowHighY = i;
+
+            minX = Math.min(minX, n.getMinX());
+            maxX = Math.max(maxX, n.getMaxX());
+            minY = Math.min(minY, n.getMinY());
+            maxY = Math.max(maxY, n.getMaxY());
+        }
+
+        long lowX = list.get(lowHighX).getMaxX();
+        long lowY = list.get(lowHighY).getMaxY();
+        double separationX = (double) (list.get(highLowX).getMinX() - lowX) / Math.max(1, maxX - minX);
+        double separationY = (double) (list.get(highLowY).getMinY() - lowY) / Math.max(1, maxY - minY);
+
+        int a, b;
+        if (separationX >= separationY) {
+            a = highLowX;
+            b = lowHighX;
+        }
+        else {
+            a = highLowY;
+            b = lowHighY;
+        }
+
+        // the same entery may be extreme on both sides, any other will do then
+        if (a == b) {
+            b = (a == 0)? 1 : 0;
+        }
+
+        RtreeNode seedA = list.get(a);
+        RtreeNode seedB = list.get(b);
+        list.remove(seedA);
+        list.remove(seedB);
+        return new Pair(seedA, seedB);
+    }
+
+    @Override
+    protected RtreeNode PickNext(ArrayList<RtreeNode> list, RtreeNode groupA, RtreeNode groupB) {
+        // any of remaining enteries will do, taking the last one is cheapest
+        return list.remove(list.size() - 1);
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Read-only R-tree stored in a file and accessed through memory mapping. Every node
+ * occupies one page of fixed size holding the number of its children, a leaf flag and
+ * for every child its bounding rectangle {minX, minY, maxX, maxY} followed by either
+ * the page of child node or the identifier of the object. Opening the file parses
+ * nothing but the header, pages are loaded by the operating system as queries touch
+ * them, so the tree may be much larger than the heap. Files are created by
+ * {@code Rtree.StoreMapped()}. Instances are safe to be queried by any number of
+ * threads at once.
+ * @author Roman Vais
+ */
+public final class MappedRtree {
+
+    private static final int MAGIC = 0x52545245;    // "RTRE"
+    private static final int VERSION = 1;
+    private static final int HEADER = 32;
+    private static final int PAGE_HEADER = 8;       // child count, leaf flag
+    private static final int SLOT = 24;             // 4 ints of bounds, long reference
+
+    private final MappedByteBuffer[] chunks;
+    private final int pageSize;
+    private final int pagesPerChunk;
+    private final int pageCount;
+    private final int slots;
+    private final long size;
+
+    private MappedRtree(MappedByteBuffer[] chunks, int pageSize, int pagesPerChunk,
+                        int pageCount, long size) {
+        this.chunks = chunks;
+        this.pageSize = pageSize;
+        this.pagesPerChunk = pagesPerChunk;
+        this.pageCount = pageCount;
+        this.slots = (pageSize - PAGE_HEADER) / SLOT;
+        this.size = size;
+    }
+
+    /**
+     * Maps R-tree file into memory.
+     * @param file - file created by {@code Rtree.StoreMapped()}
+     * @return tree backed by the file
+     * @throws IOException if file cannot be read or is not an R-tree file
+     */
+    public static MappedRtree Open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Not an R-tree file: " + file);
+                }
+            }
+            header.flip();
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not an R-tree file: " + file);
+            }
+            int pageSize = header.getInt(8);
+            int pageCount = header.getInt(12);
+            long size = header.getLong(16);
+            if (pageSize < PAGE_HEADER + SLOT || pageCount < 1 || size < 0) {
+                throw new IOException("R-tree file is corrupted: " + file);
+            }
+            if (channel.size() < HEADER + (long) pageSize * pageCount) {
+                throw new IOException("R-tree file is truncated: " + file);
+            }
+
+            // pages never cross chunk boundary, so every page is in single buffer
+            int pagesPerChunk = Integer.MAX_VALUE / pageSize;
+            int chunkCount = (pageCount + pagesPerChunk - 1) / pagesPerChunk;
+            MappedByteBuffer[] chunks = new MappedByteBuffer[chunkCount];
+            for (int c = 0; c < chunkCount; c++) {
+                int pages = Math.min(pagesPerChunk, pageCount - c * pagesPerChunk);
+                long offset = HEADER + (long) c * pagesPerChunk * pageSize;
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) pages * pageSize);
+            }
+            return new MappedRtree(chunks, pageSize, pagesPerChunk, pageCount, size);
+        }
+        finally {
+            // mapping stays valid after the channel is closed
+            channel.close();
+        }
+    }
+
+    static void Write(RtreeNode root, File file, RtreeIdentifier identifier) throws IOException {
+        /*
+          Number nodes breadth first, page of every node is its position in
+          the list. Page size is given by the fullest node of the tree.
+         */
+        ArrayList<RtreeNode> nodes = new ArrayList();
+        nodes.add(root);
+        int maxChildren = 1;
+        long size = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            RtreeNode node = nodes.get(i);
+            int children = node.getChildnodeCount();
+            maxChildren = Math.max(maxChildren, children);
+            for (int c = 0; c < children; c++) {
+                RtreeNode child = node.getChildnode(c);
+                if (child.getIsEntery()) {
+                    size++;
+                }
+                else {
+                    nodes.add(child);
+                }
+            }
+        }
+        int pageSize = PAGE_HEADER + SLOT * maxChildren;
+
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(pageSize);
+            out.writeInt(nodes.size());
+            out.writeLong(size);
+            out.write(new byte[HEADER - 24]);
+
+            int nextPage = 1;
+            byte[] padding = new byte[pageSize];
+            for (RtreeNode node : nodes) {
+                int children = node.getChildnodeCount();
+                boolean leaf = (children == 0) || node.getChildnode(0).getIsEntery();
+                out.writeInt(children);
+                out.writeInt(leaf? 1 : 0);
+                for (int c = 0; c < children; c++) {
+                    RtreeNode child = node.getChildnode(c);
+                    out.writeInt(child.getMinX());
+                    out.writeInt(child.getMinY());
+                    out.writeInt(child.getMaxX());
+                    out.writeInt(child.getMaxY());
+                    out.writeLong(leaf? identifier.identify(child.getContent()) : nextPage++);
+                }
+                out.write(padding, 0, SLOT * (maxChildren - children));
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns number of objects stored in this tree.
+     * @return number of objects
+     */
+    public long size() {
+        return this.size;
+    }
+
+    public ArrayList<Long> Find(Point p) {
+        final ArrayList<Long> found = new ArrayList();
+        this.Find(p, new RtreeIdVisitor() {
+            @Override
+            public boolean visit(long id) {
+                return found.add(id);
+            }
+        });
+        return found;
+    }
+
+    public ArrayList<Long> Find(Rectangle r) {
+        final ArrayList<Long> found = new ArrayList();
+        this.Find(r, new RtreeIdVisitor() {
+            @Override
+            public boolean visit(long id) {
+                return found.add(id);
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Passes identifier of every object whose rectangle contains given point to the
+     * visitor.
+     * @param p - point objects must contain
+     * @param visitor - callback receiving identifiers of found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     * @throws IllegalStateException if search reaches damaged page of the file
+     */
+    public boolean Find(Point p, RtreeIdVisitor visitor) {
+        return this.Search(0, p.x, p.y, p.x + 1, p.y + 1, visitor);
+    }
+
+    /**
+     * Passes identifier of every object whose rectangle intersects given rectangle to
+     * the visitor.
+     * @param r - rectangle objects must intersect
+     * @param visitor - callback receiving identifiers of found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     * @throws IllegalStateException if search reaches damaged page of the file
+     */
+    public boolean Find(Rectangle r, RtreeIdVisitor visitor) {
+        if (r.width <= 0 || r.height <= 0) {
+            return true;
+        }
+        return this.Search(0, r.x, r.y, r.x + r.width, r.y + r.height, visitor);
+    }
+
+    private boolean Search(int page, int minX, int minY, int maxX, int maxY, RtreeIdVisitor visitor) {
+        /*
+          Buffers are read only by absolute positions, so concurrent queries
+          do not disturb each other. Query rectangle is half open the same
+          way as in PackedRtree. Pages are checked as they are read, children
+          always lie on later pages, so damaged file cannot lead the search
+          out of the file or around in a cycle.
+         */
+        ByteBuffer b = this.chunks[page / this.pagesPerChunk];
+        int base = (page % this.pagesPerChunk) * this.pageSize;
+        int count = b.getInt(base);
+        boolean leaf = b.getInt(base + 4) != 0;
+        if (count < 0 || count > this.slots) {
+            throw new IllegalStateException("R-tree file is corrupted, page " + page +
+                                            " holds " + count + " children.");
+        }
+        for (int i = 0; i < count; i++) {
+            int k = base + PAGE_HEADER + SLOT * i;
+            int x1 = b.getInt(k);
+            int y1 = b.getInt(k + 4);
+            int x2 = b.getInt(k + 8);
+            int y2 = b.getInt(k + 12);
+            if (x1 < x2 && y1 < y2 && x1 < maxX && minX < x2 && y1 < maxY && minY < y2) {
+                long reference = b.getLong(k + 16);
+                if (leaf) {
+                    if (!visitor.visit(reference)) {
+                        return false;
+                    }
+                }
+                else if (reference <= page || reference >= this.pageCount) {
+                    throw new IllegalStateException("R-tree file is corrupted, page " + page +
+                                                    " refers to page " + reference + ".");
+                }
+                else if (!this.Search((int) reference, minX, minY, maxX, maxY, visitor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+/**
+ * Immutable read-only copy of R-tree packed into flat arrays. Bounding rectangles of nodes
+ * and enteries are stored as contiguous int values {minX, minY, maxX, maxY}, children of
+ * each node are an index range into the next level and objects are kept in single array.
+ * Nodes are laid out breadth first, so children of a node are always next to each other.
+ * Compared to graph of {@code RtreeNode} objects, queries chase no pointers and the
+ * structure takes a fraction of memory. Categories are stored only when some object
+ * does not belong to all of them. Instances are created by {@code Rtree.Freeze()}
+ * and are safe to be queried by any number of threads at once.
+ * @author Roman Vais
+ * @param <T>
+ */
+public final class PackedRtree<T> {
+
+    private final int[] nodeBounds;     // 4 values per node
+    private final int[] childStart;     // first child of node (node or entery index)
+    private final int[] childEnd;       // one after last child of node
+    private final boolean[] leaf;       // whether children of node are enteries
+    private final int[] enteryBounds;   // 4 values per entery
+    private final Object[] objects;
+    private final long[] nodeMasks;     // null when all objects are in all categories
+    private final long[] enteryMasks;
+
+    PackedRtree(RtreeNode root) {
+        /*
+          Collect nodes breadth first. Children of every node are appended to
+          the list right after children of previous node, so they always form
+          continuous range.
+         */
+        ArrayList<RtreeNode> nodes = new ArrayList();
+        ArrayList<RtreeNode> enteries = new ArrayList();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++) {
+            RtreeNode node = nodes.get(i);
+            int children = node.getChildnodeCount();
+            for (int c = 0; c < children; c++) {
+                RtreeNode child = node.getChildnode(c);
+                if (child.getIsEntery()) {
+                    enteries.add(child);
+                }
+                else {
+                    nodes.add(child);
+                }
+            }
+        }
+
+        int count = nodes.size();
+        this.nodeBounds = new int[4 * count];
+        this.childStart = new int[count];
+        this.childEnd = new int[count];
+        this.leaf = new boolean[count];
+
+        int nextNode = 1;
+        int nextEntery = 0;
+        for (int i = 0; i < count; i++) {
+            RtreeNode node = nodes.get(i);
+            PackedRtree.Store(this.nodeBounds, i, node);
+
+            int children = node.getChildnodeCount();
+            this.leaf[i] = (children == 0) || node.getChildnode(0).getIsEntery();
+            if (this.leaf[i]) {
+                this.childStart[i] = nextEntery;
+                nextEntery += children;
+            }
+            else {
+                this.childStart[i] = nextNode;
+                nextNode += children;
+            }
+            this.childEnd[i] = this.childStart[i] + children;
+        }
+
+        this.enteryBounds = new int[4 * enteries.size()];
+        this.objects = new Object[enteries.size()];
+        boolean categorised = false;
+        for (int i = 0; i < enteries.size(); i++) {
+            RtreeNode entery = enteries.get(i);
+            PackedRtree.Store(this.enteryBounds, i, entery);
+            this.objects[i] = entery.getContent();
+            categorised |= (entery.getMask() != Rtree.ALL_CATEGORIES);
+        }
+
+        if (categorised) {
+            this.nodeMasks = new long[count];
+            for (int i = 0; i < count; i++) {
+                this.nodeMasks[i] = nodes.get(i).getMask();
+            }
+            this.enteryMasks = new long[enteries.size()];
+            for (int i = 0; i < enteries.size(); i++) {
+                this.enteryMasks[i] = enteries.get(i).getMask();
+            }
+        }
+        else {
+            this.nodeMasks = null;
+            this.enteryMasks = null;
+        }
+    }
+
+    /**
+     * Returns number of objects stored in this tree.
+     * @return number of objects
+     */
+    public int size() {
+        return this.objects.length;
+    }
+
+    public ArrayList<T> Find(Point p) {
+        final ArrayList<T> found = new ArrayList();
+        this.Find(p, new RtreeVisitor<T>() {
+            @Override
+            public boolean visit(T object) {
+                return found.add(object);
+            }
+        });
+        return found;
+    }
+
+    public ArrayList<T> Find(Rectangle r) {
+        final ArrayList<T> found = new ArrayList();
+        this.Find(r, new RtreeVisitor<T>() {
+            @Override
+            public boolean visit(T object) {
+                return found.add(object);
+            }
+        });
+        return found;
+    }
+
+    public ArrayList<T> Find(Rectangle r, long mask) {
+        final ArrayList<T> found = new ArrayList();
+        this.Find(r, mask, new RtreeVisitor<T>() {
+            @Override
+            public boolean visit(T object) {
+                return found.add(object);
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Passes every object whose rectangle contains given point to the visitor.
+     * @param p - point objects must contain
+     * @param visitor - callback receiving found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     */
+    public boolean Find(Point p, RtreeVisitor<T> visitor) {
+        return this.Search(0, p.x, p.y, p.x + 1, p.y + 1, visitor);
+    }
+
+    /**
+     * Passes every object whose rectangle intersects given rectangle to the visitor.
+     * @param r - rectangle objects must intersect
+     * @param visitor - callback receiving found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     */
+    public boolean Find(Rectangle r, RtreeVisitor<T> visitor) {
+        if (r.width <= 0 || r.height <= 0) {
+            return true;
+        }
+        return this.Search(0, r.x, r.y, r.x + r.width, r.y + r.height, visitor);
+    }
+
+    /**
+     * Passes every object of given categories whose rectangle intersects given
+     * rectangle to the visitor, the same way as {@code Rtree.Find(r, mask, visitor)}.
+     * @param r - rectangle objects must intersect
+     * @param mask - bitmask of categories, object must belong to at least one of them
+     * @param visitor - callback receiving found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     */
+    public boolean Find(Rectangle r, long mask, RtreeVisitor<T> visitor) {
+        if (r.width <= 0 || r.height <= 0) {
+            return true;
+        }
+        return this.Search(0, r.x, r.y, r.x + r.width, r.y + r.height, mask, visitor);
+    }
+
+    private boolean Search(int node, int minX, int minY, int maxX, int maxY, long mask,
+                           RtreeVisitor<T> visitor) {
+        // subtrees holding no object of asked categories are skipped
+        if (this.nodeMasks == null) {
+            return mask == 0 || this.Search(node, minX, minY, maxX, maxY, visitor);
+        }
+        int start = this.childStart[node];
+        int end = this.childEnd[node];
+        if (this.leaf[node]) {
+            int[] b = this.enteryBounds;
+            for (int i = start; i < end; i++) {
+                if ((this.enteryMasks[i] & mask) != 0 &&
+                    PackedRtree.Intersects(b, i, minX, minY, maxX, maxY)) {
+                    if (!visitor.visit((T) this.objects[i])) {
+                        return false;
+                    }
+                }
+            }
+        }
+        else {
+            int[] b = this.nodeBounds;
+            for (int i = start; i < end; i++) {
+                if ((this.nodeMasks[i] & mask) != 0 &&
+                    PackedRtree.Intersects(b, i, minX, minY, maxX, maxY)) {
+                    if (!this.Search(i, minX, minY, maxX, maxY, mask, visitor)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean Search(int node, int minX, int minY, int maxX, int maxY, RtreeVisitor<T> visitor) {
+        /*
+          Query rectangle is half open the same way as java.awt.Rectangle is,
+          point query is therefore a window of size 1 x 1.
+         */
+        int start = this.childStart[node];
+        int end = this.childEnd[node];
+        if (this.leaf[node]) {
+            int[] b = this.enteryBounds;
+            for (int i = start; i < end; i++) {
+                if (PackedRtree.Intersects(b, i, minX, minY, maxX, maxY)) {
+                    if (!visitor.visit((T) this.objects[i])) {
+                        return false;
+                    }
+                }
+            }
+        }
+        else {
+            int[] b = this.nodeBounds;
+            for (int i = start; i < end; i++) {
+                if (PackedRtree.Intersects(b, i, minX, minY, maxX, maxY)) {
+                    if (!this.Search(i, minX, minY, maxX, maxY, visitor)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean Intersects(int[] b, int i, int minX, int minY, int maxX, int maxY) {
+        int k = 4 * i;
+        return b[k] < b[k + 2] && b[k + 1] < b[k + 3] &&
+               b[k] < maxX && minX < b[k + 2] && b[k + 1] < maxY && minY < b[k + 3];
+    }
+
+    private static void Store(int[] b, int i, RtreeNode node) {
+        int k = 4 * i;
+        b[k] = node.getMinX();
+        b[k + 1] = node.getMinY();
+        b[k + 2] = node.getMaxX();
+        b[k + 3] = node.getMaxY();
+    }
+}
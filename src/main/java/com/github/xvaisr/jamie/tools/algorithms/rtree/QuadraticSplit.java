@@ -0,0 +1,97 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import com.github.xvaisr.jamie.tools.structures.Pair;
+import java.util.ArrayList;
+
+/**
+ * Guttman's quadratic split. Seeds are the pair of enteries which would waste the most
+ * area if put together, remaining enteries are assigned in order of their preference
+ * for one of the groups. Cost is quadratic in number of enteries of the node.
+ * @author Roman Vais
+ */
+public class QuadraticSplit extends GuttmanSplit {
+
+    @Override
+    protected Pair<RtreeNode, RtreeNode> PickSeeds(ArrayList<RtreeNode> list) {
+        /*
+          QPS1 [Calculate inefficiency of grouping enteries together]
+          For each pair of enteries E1 and E2 compose rectangle J.
+          Calculate area D = J.getArea - E1.getArea - E2.getArea
+
+          QPS2 [Choese the most wasteful pair] choese pair with largest D
+        */
+        RtreeNode seedA = null;
+        RtreeNode seedB = null;
+        long d = Long.MIN_VALUE; // negative numbers mean overlap
+
+        int count = list.size();
+        for (int i = 0; i < count; i++) {
+            RtreeNode a = list.get(i);
+            long areaA = RtreeGeometry.area(a);
+
+            for (int j = i + 1; j < count; j++) {
+                RtreeNode b = list.get(j);
+                /*
+                 If A nad B are overlaping and J is tightly closing them,
+                 sum of their areaa is greater than area of J
+                 */
+                long area = RtreeGeometry.unionArea(a, b) - areaA - RtreeGeometry.area(b);
+                if (area > d) {
+                    d = area;
+                    seedA = a;
+                    seedB = b;
+                }
+            }
+        }
+
+        list.remove(seedA);
+        list.remove(seedB);
+        return new Pair(seedA, seedB);
+    }
+
+    @Override
+    protected RtreeNode PickNext(ArrayList<RtreeNode> list, RtreeNode groupA, RtreeNode groupB) {
+        /*
+          PN1 [Determine cost of putting each entery in each group]
+          For each entery E not yet in group calculate D1 and D2
+          - area increase required to include enteri into group A
+          (group 1) and group B (group 2)
+         */
+
+        long diff = -1; // intentionaly lesser than zero
+        int chosenOne = -1;
+
+        for (int i = 0; i < list.size(); i++) {
+           RtreeNode n = list.get(i);
+           long d1 = RtreeGeometry.enlargement(groupA, n);
+           long d2 = RtreeGeometry.enlargement(groupB, n);
+           long df = Math.abs(d1 - d2);
+
+           /*
+             PN2 [Find the entery with greatis preference for the group]
+             choese any entery with maximum diference between D1 and D2
+            */
+
+           if (df > diff) {
+               chosenOne = i;
+               diff = df;
+           }
+        }
+        return list.remove(chosenOne);
+    }
+}
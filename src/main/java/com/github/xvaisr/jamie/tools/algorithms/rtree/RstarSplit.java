@@ -0,0 +1,134 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import com.github.xvaisr.jamie.tools.structures.Pair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * R*-tree split. Split axis is chosen by minimal sum of margins over all possible
+ * distributions, along that axis the distribution with least overlap wins. Cost is
+ * O(M log M) per split, resulting nodes are close to square and overlap little.
+ * @author Roman Vais
+ */
+public class RstarSplit implements RtreeSplitPolicy {
+
+    @Override
+    public Pair<RtreeNode, RtreeNode> split(RtreeNode node) {                  // R* node spliting
+        ArrayList<RtreeNode> list = node.getChildList();
+        int count = list.size();
+        int m = Math.max(1, Math.min(node.getMinEnteries(), count / 2));
+
+        /*
+          S1 [ChooseSplitAxis] For each axis sort enteries by lower and then by
+          upper value of their rectangles and determine all M - 2m + 2
+          distributions. Compute S, the sum of margin values of all
+          distributions, and choose axis with minimum S.
+         */
+        long bestMargin = Long.MAX_VALUE;
+        Comparator<RtreeNode>[] axis = null;
+        for (Comparator<RtreeNode>[] sorts : RstarSplit.AXES) {
+            long margin = 0;
+            for (Comparator<RtreeNode> sort : sorts) {
+                Collections.sort(list, sort);
+                int[][] prefix = RtreeGeometry.prefixBounds(list, false);
+                int[][] suffix = RtreeGeometry.prefixBounds(list, true);
+                for (int k = m; k <= count - m; k++) {
+                    margin += RtreeGeometry.margin(prefix[k - 1]) + RtreeGeometry.margin(suffix[k]);
+                }
+            }
+            if (margin < bestMargin) {
+                bestMargin = margin;
+                axis = sorts;
+            }
+        }
+
+        /*
+          S2 [ChooseSplitIndex] Along chosen axis choose distribution with
+          minimum overlap value, resolve ties by minimum area value.
+         */
+        long bestOverlap = Long.MAX_VALUE;
+        long bestArea = Long.MAX_VALUE;
+        Comparator<RtreeNode> bestSort = null;
+        int bestK = m;
+        for (Comparator<RtreeNode> sort : axis) {
+            Collections.sort(list, sort);
+            int[][] prefix = RtreeGeometry.prefixBounds(list, false);
+            int[][] suffix = RtreeGeometry.prefixBounds(list, true);
+            for (int k = m; k <= count - m; k++) {
+                int[] a = prefix[k - 1];
+                int[] b = suffix[k];
+                long overlap = RtreeGeometry.overlap(a, b);
+                long area = RtreeGeometry.area(a) + RtreeGeometry.area(b);
+                if (overlap < bestOverlap || (overlap == bestOverlap && area < bestArea)) {
+                    bestOverlap = overlap;
+                    bestArea = area;
+                    bestSort = sort;
+                    bestK = k;
+                }
+            }
+        }
+
+        // S3 Distribute the enteries into two groups
+        Collections.sort(list, bestSort);
+
+        RtreeNode groupA = new RtreeNode();
+        groupA.setMinEnteries(node.getMinEnteries());
+        groupA.setMaxEnteries(node.getMaxEnteries());
+        groupA.replaceChildList(new ArrayList(list.subList(0, bestK)));
+
+        RtreeNode groupB = new RtreeNode();
+        groupB.setMinEnteries(node.getMinEnteries());
+        groupB.setMaxEnteries(node.getMaxEnteries());
+        groupB.replaceChildList(new ArrayList(list.subList(bestK, count)));
+
+        return new Pair(groupA, groupB);
+    }
+
+    private static final Comparator<RtreeNode> LOWER_X = new Comparator<RtreeNode>() {
+        @Override
+        public int compare(RtreeNode a, RtreeNode b) {
+            return Integer.compare(a.getMinX(), b.getMinX());
+        }
+    };
+
+    private static final Comparator<RtreeNode> UPPER_X = new Comparator<RtreeNode>() {
+        @Override
+        public int compare(RtreeNode a, RtreeNode b) {
+            return Integer.compare(a.getMaxX(), b.getMaxX());
+        }
+    };
+
+    private static final Comparator<RtreeNode> LOWER_Y = new Comparator<RtreeNode>() {
+        @Override
+        public int compare(RtreeNode a, RtreeNode b) {
+            return Integer.compare(a.getMinY(), b.getMinY());
+        }
+    };
+
+    private static final Comparator<RtreeNode> UPPER_Y = new Comparator<RtreeNode>() {
+        @Override
+        public int compare(RtreeNode a, RtreeNode b) {
+            return Integer.compare(a.getMaxY(), b.getMaxY());
+        }
+    };
+
+    private static final Comparator<RtreeNode>[][] AXES = new Comparator[][] {
+        {LOWER_X, UPPER_X}, {LOWER_Y, UPPER_Y}
+    };
+}
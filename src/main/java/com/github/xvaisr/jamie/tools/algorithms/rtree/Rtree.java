@@ -15,138 +15,923 @@
 
 package com.github.xvaisr.jamie.tools.algorithms.rtree;
 
+import com.github.xvaisr.jamie.engine.geometry.shapes2D.LineSegment;
+import com.github.xvaisr.jamie.engine.geometry.shapes2D.Shape;
 import com.github.xvaisr.jamie.tools.structures.Pair;
 import java.awt.Point;
 import java.awt.Rectangle;
-import static java.lang.Math.abs;
-import java.util.ArrayDeque;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- *
+ * R-tree of objects bounded by rectangles. Objects not implementing
+ * {@code RtreeNodeLinker} are kept in an identity map from object to its entery, so
+ * they can be deleted, moved and recategorised without searching the tree. The map
+ * costs one hash table slot per stored object; objects which are worth those bytes
+ * less than the search may implement {@code RtreeNodeLinker} instead.
  * @author Roman Vais
  * @param <T>
  */
 
 public class Rtree<T>{
+
+    /**
+     * Enumeration of insertion strategies tree can be built with.
+     * GUTTMAN is original R-tree with least enlargement subtree choice, by default
+     * combined with quadratic split. RSTAR is R*-tree which chooses leaves by least
+     * overlap enlargement and on first overflow of each level reinserts part of the
+     * node's enteries instead of splitting it, by default combined with R* split.
+     */
+    public static enum Mode {
+        GUTTMAN, RSTAR
+    }
+
+    /**
+     * Enumeration of relations between rectangle of an object and query window.
+     * INTERSECTS matches objects sharing some area with the window, CONTAINS objects
+     * covering the whole window and WITHIN objects lying completely inside the window.
+     * For INTERSECTS and WITHIN subtrees lying inside the window are taken whole,
+     * without testing their enteries.
+     */
+    public static enum Relation {
+        INTERSECTS, CONTAINS, WITHIN
+    }
+
+    /**
+     * Categories of objects inserted without mask, they match query for any category.
+     */
+    public static final long ALL_CATEGORIES = -1L;
+
+    private static final double REINSERT_FACTOR = 0.3;
+    private static final int STREAM_MAGIC = 0x52545253;  // "RTRS"
+    private static final int STREAM_VERSION = 2;
+    private static final int PARALLEL_THRESHOLD = 4096;
+
     private RtreeNode<T> root;
+    private final Mode mode;
+    private final RtreeSplitPolicy splitPolicy;
+    private Set<RtreeNode> deferred;
+    private final IdentityHashMap<T, Object> enteries;
+    private RtreeAggregator<T, ?> aggregator;
+    private int parallelThreshold;
+    private RtreeMetrics metrics;
 
     public Rtree() {
+        this(Mode.GUTTMAN);
+    }
+
+    public Rtree(Mode mode) {
+        this(mode, (mode == Mode.RSTAR)? new RstarSplit() : new QuadraticSplit());
+    }
+
+    /**
+     * Creates empty tree with given insertion strategy and node split algorithm.
+     * @param mode - strategy for choosing subtree and treating overflow
+     * @param split - algorithm used for splitting overflowing nodes
+     */
+    public Rtree(Mode mode, RtreeSplitPolicy split) {
         this.root = new RtreeNode();
+        this.mode = mode;
+        this.splitPolicy = split;
+        this.enteries = new IdentityHashMap();
+        this.parallelThreshold = PARALLEL_THRESHOLD;
     }
 
     public Rtree(int min, int max) {
-        this();
+        this(min, max, Mode.GUTTMAN);
+    }
+
+    public Rtree(int min, int max, Mode mode) {
+        this(mode);
+        this.root.setMinEnteries(min);
+        this.root.setMaxEnteries(max);
+    }
+
+    public Rtree(int min, int max, RtreeSplitPolicy split) {
+        this(min, max, Mode.GUTTMAN, split);
+    }
+
+    public Rtree(int min, int max, Mode mode, RtreeSplitPolicy split) {
+        this(mode, split);
         this.root.setMinEnteries(min);
         this.root.setMaxEnteries(max);
     }
 
     public ArrayList<T> Find(Point p) {
+        final ArrayList<T> objects = new ArrayList();
+        this.Find(p, new RtreeVisitor<T>() {
+            @Override
+            public boolean visit(T object) {
+                return objects.add(object);
+            }
+        });
+        return objects;
+    }
+
+    public ArrayList<T> Find(Rectangle r) {
+        final ArrayList<T> objects = new ArrayList();
+        this.Find(r, new RtreeVisitor<T>() {
+            @Override
+            public boolean visit(T object) {
+                return objects.add(object);
+            }
+        });
+        return objects;
+    }
+
+    /**
+     * Passes every object whose rectangle contains given point to the visitor. Search
+     * does not allocate any memory and stops as soon as the visitor asks for it.
+     * @param p - point objects must contain
+     * @param visitor - callback receiving found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     */
+    public boolean Find(Point p, RtreeVisitor<T> visitor) {
+        if (this.metrics != null) {
+            this.metrics.query();
+        }
+        return this.Search(this.root, p, visitor);
+    }
+
+    /**
+     * Passes every object whose rectangle intersects given rectangle to the visitor.
+     * Search does not allocate any memory and stops as soon as the visitor asks for it.
+     * @param r - rectangle objects must intersect
+     * @param visitor - callback receiving found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     */
+    public boolean Find(Rectangle r, RtreeVisitor<T> visitor) {
+        return this.Find(r, Relation.INTERSECTS, visitor);
+    }
+
+    public ArrayList<T> Find(Rectangle r, Relation relation) {
+        final ArrayList<T> objects = new ArrayList();
+        this.Find(r, relation, new RtreeVisitor<T>() {
+            @Override
+            public boolean visit(T object) {
+                return objects.add(object);
+            }
+        });
+        return objects;
+    }
+
+    /**
+     * Passes every object whose rectangle is in given relation with given rectangle
+     * to the visitor.
+     * @param r - query window
+     * @param relation - relation of object's rectangle to the window
+     * @param visitor - callback receiving found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     */
+    public boolean Find(Rectangle r, Relation relation, RtreeVisitor<T> visitor) {
+        if (this.metrics != null) {
+            this.metrics.query();
+        }
+        return this.Search(this.root, r, relation, visitor);
+    }
+
+    public ArrayList<T> Find(Point p, long mask) {
+        final ArrayList<T> objects = new ArrayList();
+        this.Find(p, mask, new RtreeVisitor<T>() {
+            @Override
+            public boolean visit(T object) {
+                return objects.add(object);
+            }
+        });
+        return objects;
+    }
+
+    public ArrayList<T> Find(Rectangle r, long mask) {
+        final ArrayList<T> objects = new ArrayList();
+        this.Find(r, mask, new RtreeVisitor<T>() {
+            @Override
+            public boolean visit(T object) {
+                return objects.add(object);
+            }
+        });
+        return objects;
+    }
+
+    public boolean Find(Point p, long mask, RtreeVisitor<T> visitor) {
+        return this.Find(new Rectangle(p.x, p.y, 1, 1), mask, visitor);
+    }
+
+    /**
+     * Passes every object of given categories whose rectangle intersects given rectangle
+     * to the visitor. Every node knows union of categories in its subtree, so subtrees
+     * holding no object of asked categories are skipped. The unions are kept up to date
+     * by modifications of the tree, so the query only reads it.
+     * @param r - rectangle objects must intersect
+     * @param mask - bitmask of categories, object must belong to at least one of them
+     * @param visitor - callback receiving found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     */
+    public boolean Find(Rectangle r, long mask, RtreeVisitor<T> visitor) {
+        if (this.metrics != null) {
+            this.metrics.query();
+        }
+        return this.Search(this.root, r, mask, visitor);
+    }
+
+    public ArrayList<T> Find(Shape s) {
+        final ArrayList<T> objects = new ArrayList();
+        this.Find(s, new RtreeVisitor<T>() {
+            @Override
+            public boolean visit(T object) {
+                return objects.add(object);
+            }
+        });
+        return objects;
+    }
+
+    /**
+     * Passes every object whose rectangle intersects given convex shape to the visitor.
+     * Subtrees outside bounding box of the shape are skipped, subtrees lying wholly
+     * inside the shape are reported without testing their enteries and only enteries
+     * on the border of the shape are tested exactly. Rectangle of an object is taken
+     * as the set of points it covers, the same points it is found by {@code Find(Point)}.
+     * @param s - convex polygon, triangle or rectangle objects must intersect
+     * @param visitor - callback receiving found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     */
+    public boolean Find(Shape s, RtreeVisitor<T> visitor) {
+        if (this.metrics != null) {
+            this.metrics.query();
+        }
+        return this.Search(this.root, new RtreeShape(s), visitor);
+    }
+
+    /**
+     * Finds k objects nearest to given point. Distance of an object is distance of
+     * the point to the object's bounding rectangle.
+     * @param p - point to which distance is measured
+     * @param k - maximal number of objects returned
+     * @return up to k objects ordered from the nearest one
+     */
+    public ArrayList<T> Nearest(Point p, int k) {
+        return this.Nearest(p, k, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Finds k objects nearest to given point which are not further than given distance.
+     * @param p - point to which distance is measured
+     * @param k - maximal number of objects returned
+     * @param maxDistance - maximal distance of returned objects
+     * @return up to k objects ordered from the nearest one
+     */
+    public ArrayList<T> Nearest(Point p, int k, double maxDistance) {
         ArrayList<T> objects = new ArrayList();
-        ArrayList<RtreeNode> enteryList = this.Search(p);
-        for(RtreeNode<T> node : enteryList) {
-            objects.add(node.getContent());
+        RtreeNearestIterator<T> it = this.NearestIterator(p, maxDistance);
+        while (objects.size() < k && it.hasNext()) {
+            objects.add(it.next());
         }
         return objects;
     }
 
-    public ArrayList<T> Find(Rectangle r) {
+    /**
+     * Returns iterator streaming objects in order of increasing distance from given point.
+     * Next nearest object is looked up only when asked for.
+     * @param p - point to which distance is measured
+     * @return iterator over all objects of this tree ordered by distance
+     */
+    public RtreeNearestIterator<T> NearestIterator(Point p) {
+        return this.NearestIterator(p, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns iterator streaming objects not further than given distance in order of
+     * increasing distance from given point.
+     * @param p - point to which distance is measured
+     * @param maxDistance - maximal distance of returned objects
+     * @return iterator over objects ordered by distance
+     */
+    public RtreeNearestIterator<T> NearestIterator(Point p, double maxDistance) {
+        return new RtreeNearestIterator(this.root, p, maxDistance);
+    }
+
+    /**
+     * Finds objects whose rectangles are crossed by given line segment, ordered by the
+     * distance from start of the segment at which it enters them.
+     * @param s - line segment, it starts at point K and ends at point L
+     * @return crossed objects ordered from the first one hit
+     */
+    public ArrayList<T> Cast(LineSegment s) {
+        return this.Cast(s, false);
+    }
+
+    /**
+     * Finds objects whose rectangles are crossed by given line segment or by ray going
+     * from its start through its end.
+     * @param s - line segment, it starts at point K and ends at point L
+     * @param ray - whether the segment continues beyond its end
+     * @return crossed objects ordered from the first one hit
+     */
+    public ArrayList<T> Cast(LineSegment s, boolean ray) {
         ArrayList<T> objects = new ArrayList();
-        ArrayList<RtreeNode> enteryList = this.Search(r);
-        for(RtreeNode<T> node : enteryList) {
-            objects.add(node.getContent());
+        RtreeCastIterator<T> it = this.CastIterator(s, ray);
+        while (it.hasNext()) {
+            objects.add(it.next());
         }
         return objects;
     }
 
+    public T CastFirst(LineSegment s) {
+        return this.CastFirst(s, false);
+    }
+
+    /**
+     * Finds the object hit first by given line segment or ray. Only nodes the segment
+     * enters before it hits the object are opened.
+     * @param s - line segment, it starts at point K and ends at point L
+     * @param ray - whether the segment continues beyond its end
+     * @return first object hit, null if the segment misses all of them
+     */
+    public T CastFirst(LineSegment s, boolean ray) {
+        RtreeCastIterator<T> it = this.CastIterator(s, ray);
+        return it.hasNext()? it.next() : null;
+    }
+
+    /**
+     * Returns iterator streaming objects crossed by given line segment or ray in order
+     * in which it hits them. Next object is looked up only when asked for.
+     * @param s - line segment, it starts at point K and ends at point L
+     * @param ray - whether the segment continues beyond its end
+     * @return iterator over crossed objects ordered along the segment
+     */
+    public RtreeCastIterator<T> CastIterator(LineSegment s, boolean ray) {
+        return new RtreeCastIterator(this.root, s, ray);
+    }
+
+    /**
+     * Finds all pairs of objects from this and the other tree whose rectangles intersect.
+     * @param <U> type of objects in the other tree
+     * @param other - tree joined with this one
+     * @return list of pairs (object of this tree, object of the other tree)
+     */
+    public <U> ArrayList<Pair<T, U>> Join(Rtree<U> other) {
+        final ArrayList<Pair<T, U>> pairs = new ArrayList();
+        this.Join(other, new RtreeJoinVisitor<T, U>() {
+            @Override
+            public boolean visit(T a, U b) {
+                return pairs.add(new Pair(a, b));
+            }
+        });
+        return pairs;
+    }
+
+    /**
+     * Passes every pair of objects from this and the other tree whose rectangles intersect
+     * to the visitor. Both trees are walked at once, pairs of subtrees that do not
+     * overlap are skipped as a whole, so no object is searched for separately.
+     * @param <U> type of objects in the other tree
+     * @param other - tree joined with this one
+     * @param visitor - callback receiving found pairs
+     * @return true if join went through both trees, false if visitor stopped it
+     */
+    public <U> boolean Join(Rtree<U> other, RtreeJoinVisitor<T, U> visitor) {
+        if (!RtreeGeometry.intersects(this.root, other.root)) {
+            return true;
+        }
+        return Rtree.Join(this.root, other.root, visitor);
+    }
+
+    /**
+     * Finds objects whose rectangles intersect given rectangle using threads of common
+     * fork/join pool. Meant for windows covering large part of the tree, small windows
+     * are faster searched by {@code Find()}.
+     * @param r - rectangle objects must intersect
+     * @return list of intersecting objects
+     */
+    public ArrayList<T> FindParallel(Rectangle r) {
+        return this.FindParallel(r, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Finds objects whose rectangles intersect given rectangle using threads of given
+     * pool. Subtrees estimated to hold more objects than the parallel threshold are
+     * searched by separate tasks, results are merged at the end. Tree must not be modified until
+     * the search finishes.
+     * @param r - rectangle objects must intersect
+     * @param pool - pool executing the search
+     * @return list of intersecting objects
+     */
+    public ArrayList<T> FindParallel(Rectangle r, ForkJoinPool pool) {
+        return pool.invoke(new RtreeSearchTask<T>(this.root, new Rectangle(r), this.parallelThreshold));
+    }
+
+    /**
+     * Sets the smallest number of objects in subtree for which {@code FindParallel()}
+     * creates separate task.
+     * @param threshold - number of objects, default is 4096
+     */
+    public void setParallelThreshold(int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive.");
+        }
+        this.parallelThreshold = threshold;
+    }
+
+    public int getParallelThreshold() {
+        return this.parallelThreshold;
+    }
+
+    /**
+     * Returns spliterator lazily traversing objects whose rectangles intersect given
+     * rectangle. Tree must not be modified while the spliterator is in use.
+     * @param r - rectangle objects must intersect
+     * @return spliterator over intersecting objects
+     */
+    public RtreeSpliterator<T> Spliterator(Rectangle r) {
+        return new RtreeSpliterator(this.root, r);
+    }
+
+    /**
+     * Returns stream of objects whose rectangles intersect given rectangle. Objects are
+     * searched for only as the stream consumes them, parallel stream processes separate
+     * subtrees in separate threads.
+     * @param r - rectangle objects must intersect
+     * @param parallel - whether returned stream is parallel
+     * @return stream of intersecting objects
+     */
+    public Stream<T> Stream(Rectangle r, boolean parallel) {
+        return StreamSupport.stream(this.Spliterator(r), parallel);
+    }
+
+    /**
+     * Returns iterator lazily traversing objects whose rectangles intersect given
+     * rectangle. Tree must not be modified while the iterator is in use.
+     * @param r - rectangle objects must intersect
+     * @return iterator over intersecting objects
+     */
+    public Iterator<T> Iterate(Rectangle r) {
+        return Spliterators.iterator(this.Spliterator(r));
+    }
+
+    /**
+     * Starts counting work done by operations of this tree into given metrics.
+     * @param metrics - counters to be updated, null to stop counting
+     */
+    public void setMetrics(RtreeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public RtreeMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Walks whole tree and measures its height, fill of nodes on each level, overlap
+     * of siblings and dead space. Cost is linear in the size of the tree.
+     * @return statistics of current shape of the tree
+     */
+    public RtreeStatistics getStatistics() {
+        return new RtreeStatistics(this.root);
+    }
+
+    /**
+     * Sets aggregator whose summaries are returned by {@code Aggregate()}. Summaries are
+     * calculated lazily by the first query touching changed part of the tree. Objects are
+     * summarised when read, so if the summarised value of an object changes, the object
+     * has to be updated by {@code Update()} to refresh summaries containing it.
+     * @param aggregator - summarises objects stored in this tree, null for none
+     */
+    public void setAggregator(RtreeAggregator<T, ?> aggregator) {
+        this.aggregator = aggregator;
+        this.root.invalidateAggregates();
+    }
+
+    /**
+     * Returns number of objects whose rectangles intersect given rectangle. Subtrees lying
+     * completely inside of the rectangle are counted from numbers stored in nodes, only
+     * nodes on the border of the rectangle are searched.
+     * @param r - rectangle objects must intersect
+     * @return number of objects intersecting the rectangle
+     */
+    public int Count(Rectangle r) {
+        return this.Count(this.root, r);
+    }
+
+    /**
+     * Returns summary of objects whose rectangles intersect given rectangle, made by
+     * aggregator of this tree. Subtrees lying completely inside of the rectangle are
+     * summarised from summaries stored in nodes.
+     * @param <S> type of summary made by aggregator of this tree
+     * @param r - rectangle objects must intersect
+     * @return summary of objects intersecting the rectangle, null if there is none
+     * @throws IllegalStateException if aggregator has not been set
+     */
+    public <S> S Aggregate(Rectangle r) {
+        if (this.aggregator == null) {
+            throw new IllegalStateException("Aggregator has not been set.");
+        }
+        Object[] result = new Object[1];
+        this.Aggregate(this.root, r, (RtreeAggregator<T, S>) this.aggregator, result);
+        return (S) result[0];
+    }
+
     public void Insert(T object, Point p) {
+        this.Insert(object, p, ALL_CATEGORIES);
+    }
+
+    public void Insert(T object, Rectangle r) {
+        this.Insert(object, r, ALL_CATEGORIES);
+    }
+
+    public void Insert(T object, Point p, long mask) {
         RtreeNode<T> entery = new RtreeNode();
         entery.setContent(object, p);
+        entery.setMask(mask);
+        this.Index(entery);
+        if (this.metrics != null) {
+            this.metrics.insert();
+        }
         this.Insert(entery, -1);
     }
 
-    public void Insert(T object, Rectangle r) {
+    /**
+     * Inserts object belonging to given categories. Queries taking a mask find the
+     * object only when they ask for at least one of its categories.
+     * @param object - inserted object
+     * @param r - bounding rectangle of the object
+     * @param mask - bitmask of categories of the object
+     */
+    public void Insert(T object, Rectangle r, long mask) {
         RtreeNode<T> entery = new RtreeNode();
         entery.setContent(object, r);
+        entery.setMask(mask);
+        this.Index(entery);
+        if (this.metrics != null) {
+            this.metrics.insert();
+        }
         this.Insert(entery, -1);
     }
 
-    public void Delete(T object, Point p) {
-        this.Delete(object, new Rectangle((p.x - 1), (p.y - 1), 2, 2));
+    /**
+     * Changes categories of object already stored in the tree.
+     * @param object - object to be changed
+     * @param mask - new bitmask of categories of the object
+     * @return true if object was found in this tree, false otherwise
+     */
+    public boolean setMask(T object, long mask) {
+        RtreeNode<T> entery = this.getEntery(object);
+        if (entery == null) {
+            return false;
+        }
+        entery.setMask(mask);
+        return true;
+    }
+
+    public boolean Delete(T object, Point p) {
+        return this.Delete(object, new Rectangle((p.x - 1), (p.y - 1), 2, 2));
+    }
+
+    /**
+     * Removes object from the tree without knowing its bounds. Entry of the object is
+     * reached directly, through {@code RtreeNodeLinker} or through the index of
+     * inserted objects, so the tree is not searched at all.
+     * @param object - object to be removed
+     * @return true if object was found in this tree and removed, false otherwise
+     */
+    public boolean Delete(T object) {
+        RtreeNode<T> entery = this.getEntery(object);
+        if (entery == null) {
+            return false;
+        }
+        this.Delete(entery);
+        return true;
     }
 
-    public void Delete(T object, Rectangle r) {                                 // delete
+    public boolean Delete(T object, Rectangle r) {                                 // delete
         /*
           D1 [Find node containg record] Invoke FindLeaf  to locate leaf L
           containing E. Stop if record was not found.
+              -- indexed objects are found without searching, search is
+                 needed only for objects inserted more than once
          */
-        RtreeNode node = this.FindLeaf(object, r);
+        RtreeNode<T> entery = this.getEntery(object, r);
+        if (entery == null) {
+            return false;
+        }
+        this.Delete(entery);
+        return true;
+    }
+
+    /**
+     * Removes all objects whose rectangles are in given relation with given window.
+     * Subtrees lying inside the window are cut off whole, for INTERSECTS and WITHIN,
+     * only their empty enteries are put back, and the tree is condensed only once
+     * afterwards, so clearing large area costs little more than visiting the removed
+     * objects. Removed are exactly the objects {@code Find(r, relation)} would find.
+     * @param r - window of removed objects
+     * @param relation - relation of object's rectangle to the window
+     * @return removed objects
+     */
+    public ArrayList<T> DeleteAll(Rectangle r, Relation relation) {
+        ArrayList<T> removed = new ArrayList();
+        ArrayList<RtreeNode> changed = new ArrayList();
+        ArrayList<Pair<RtreeNode, Integer>> Q = new ArrayList();
+        this.Cut(this.root, r, relation, removed, changed, Q);
+        if (this.metrics != null) {
+            for (int i = 0; i < removed.size(); i++) {
+                this.metrics.delete();
+            }
+        }
+
+        this.CondenseTree(changed, Q);
+        this.ReinsertOrphans(Q);
+        return removed;
+    }
 
+    private void Cut(RtreeNode node, Rectangle r, Relation relation, ArrayList<T> removed,
+                     ArrayList<RtreeNode> changed,
+                     ArrayList<Pair<RtreeNode, Integer>> Q) {                  // delete
+        // backwards, so detaching does not move children not visited yet
+        boolean detached = false;
+        for (int i = node.getChildnodeCount() - 1; i >= 0; i--) {
+            RtreeNode child = node.getChildnode(i);
+            if (!child.intersects(r)) {
+                continue;
+            }
+            if (child.getIsEntery()) {
+                if (Rtree.getMatches(child, r, relation)) {
+                    node.detachChild(child);
+                    this.Unindex(child);
+                    removed.add((T) child.getContent());
+                    detached = true;
+                }
+            }
+            else if (relation != Relation.CONTAINS && RtreeGeometry.contains(r, child)) {
+                node.detachChild(child);
+                this.Unindex(child, removed, Q);
+                detached = true;
+            }
+            else if (relation != Relation.CONTAINS || child.contains(r)) {
+                this.Cut(child, r, relation, removed, changed, Q);
+            }
+        }
+        if (detached) {
+            changed.add(node);
+        }
+    }
+
+    private void Delete(RtreeNode<T> entery) {                                  // delete
         /*
           D2 [Remove entery] Remove E from L
          */
-
-        this.DeleteEntery(node, object);
+        RtreeNode leaf = entery.getParent();
+        leaf.detachChild(entery);
+        this.Unindex(entery);
+        if (this.metrics != null) {
+            this.metrics.delete();
+        }
 
         /*
           D3 [Propagate changes] Invoke CondenseTree.
-
-          CT1 [Inicialize] Set N = L and Let Q to be set of eliminated nodes.
-          Set Q to be empty.
          */
-        ArrayList<RtreeNode> Q = new ArrayList();
-        while(node != null) {
-            /*
-              CT2 [Find parent entry] If N is a root skyp to CT6. Otherwise let
-              P to be parent of N and let En be N's entry in P.
-
-              CT3 [eliminate under-full node] If N has fewer than m enteries
-              delete En from P and add N to set Q
-                    -- already known that node is underflowing
-             */
+        ArrayList<Pair<RtreeNode, Integer>> Q = new ArrayList();
+        this.CondenseTree(Collections.singletonList(leaf), Q);
+        this.ReinsertOrphans(Q);
+    }
 
-            if (node.getUnderflow() && !node.getIsRoot()) {
-                Q.addAll(node.getChildList());
-                this.DeleteNode(node);
+    /**
+     * Applies all insertions and deletions collected in the batch at once. Deletions are
+     * applied first, then insertions. Bounding rectangles are adjusted and under-full
+     * nodes condensed only once for the whole batch instead of once per operation, and
+     * new objects are inserted in spatial order, so consecutive insertions mostly land
+     * in the same subtree.
+     * @param batch - operations to apply
+     */
+    public void Apply(RtreeBatch<T> batch) {
+        ArrayList<RtreeNode> leaves = new ArrayList();
+        for (Pair<T, Rectangle> d : batch.getDeletions()) {
+            RtreeNode<T> entery = this.getEntery(d.getA(), d.getB());
+            if (entery != null) {
+                RtreeNode leaf = entery.getParent();
+                leaf.detachChild(entery);
+                this.Unindex(entery);
+                leaves.add(leaf);
+                if (this.metrics != null) {
+                    this.metrics.delete();
+                }
             }
+        }
 
-            /*
-              CT4 [Adjust covering rectangle] If N has not been eliminated,
-              adjust En's I to tightly contain all enteries in N
-              P to be parent of N and let En be N's entry in P.
-                  -- all rectangles are adjusted on change of node
-                  -- parent rectangles need to be adjusted
-             */
+        ArrayList<Pair<RtreeNode, Integer>> Q = new ArrayList();
+        this.CondenseTree(leaves, Q);
 
-            else {
-                node.adjustRectangle();
+        List<Pair<T, Rectangle>> inserted = batch.getInsertions();
+        ArrayList<RtreeNode<T>> insertions = new ArrayList(inserted.size());
+        for (int i = 0; i < inserted.size(); i++) {
+            RtreeNode<T> entery = new RtreeNode();
+            entery.setContent(inserted.get(i).getA(), inserted.get(i).getB());
+            entery.setMask(batch.getMask(i));
+            insertions.add(entery);
+        }
+        Collections.sort(insertions, new Comparator<RtreeNode<T>>() {
+            @Override
+            public int compare(RtreeNode<T> a, RtreeNode<T> b) {
+                return Long.compareUnsigned(RtreeGeometry.mortonCode(a),
+                                            RtreeGeometry.mortonCode(b));
+            }
+        });
+
+        // changed nodes are only collected, they are adjusted all together at the end
+        this.deferred = Collections.newSetFromMap(new IdentityHashMap());
+        try {
+            this.ReinsertOrphans(Q);
+            for (RtreeNode<T> entery : insertions) {
+                this.Index(entery);
+                if (this.metrics != null) {
+                    this.metrics.insert();
+                }
+                this.Insert(entery, -1);
             }
+        }
+        finally {
+            Set<RtreeNode> changed = this.deferred;
+            this.deferred = null;
+            this.AdjustTree(changed);
+        }
+    }
 
-            /*
-              CT5 [Move up one level in tree] set N = P and repeat from CT2
-             */
+    /**
+     * Moves object to new bounds. Entry of the object is reached directly, through
+     * {@code RtreeNodeLinker} or through the index of inserted objects. When new
+     * bounds still fit in the leaf containing the object, or in the leaf's parent,
+     * the entry is changed in place and only rectangles on the path to the root are
+     * adjusted. Otherwise the entry is removed and inserted again.
+     * @param object - object to be moved
+     * @param newBounds - new bounding rectangle of the object
+     * @return true if object was found in this tree and moved, false otherwise
+     */
+    public boolean Update(T object, Rectangle newBounds) {
+        RtreeNode<T> entery = this.getEntery(object);
+        if (entery == null) {
+            return false;
+        }
+        this.Move(entery, newBounds);
+        return true;
+    }
 
-            // node's parent is adjusted by delete operation;
-            node = node.getParent();
+    /**
+     * Moves object from old bounds to new ones. Works as {@code Update(object, newBounds)},
+     * old bounds are searched only when object has been inserted more than once and
+     * its indexed entry lies elsewhere.
+     * @param object - object to be moved
+     * @param oldBounds - bounding rectangle under which object has been inserted
+     * @param newBounds - new bounding rectangle of the object
+     * @return true if object was found in this tree and moved, false otherwise
+     */
+    public boolean Update(T object, Rectangle oldBounds, Rectangle newBounds) {
+        RtreeNode<T> entery = this.getEntery(object, oldBounds);
+        if (entery == null) {
+            return false;
+        }
+        this.Move(entery, newBounds);
+        return true;
+    }
 
+    /**
+     * Builds packed tree from whole collection of objects at once using Sort-Tile-Recursive
+     * (STR) algorithm. Existing content of the tree is thrown away. Compared to inserting
+     * objects one by one, nodes of resulting tree are nearly full and overlap very little.
+     * @param objects - pairs of objects and rectangles bounding them
+     */
+    public void Load(Collection<Pair<T, Rectangle>> objects) {
+        this.Load(objects, null);
+    }
+
+    /**
+     * Builds packed tree the same way as {@code Load(objects)}, objects belong to given
+     * categories.
+     * @param objects - pairs of objects and rectangles bounding them
+     * @param masks - bitmasks of categories of objects in iteration order of the
+     *                collection, null when all objects belong to all categories
+     */
+    public void Load(Collection<Pair<T, Rectangle>> objects, long[] masks) {
+        if (masks != null && masks.length != objects.size()) {
+            throw new IllegalArgumentException("Every object needs its mask.");
+        }
+        int min = this.root.getMinEnteries();
+        int max = this.root.getMaxEnteries();
+
+        this.enteries.clear();
+        ArrayList<RtreeNode> level = new ArrayList(objects.size());
+        int i = 0;
+        for (Pair<T, Rectangle> pair : objects) {
+            RtreeNode<T> entery = new RtreeNode();
+            entery.setContent(pair.getA(), pair.getB());
+            if (masks != null) {
+                entery.setMask(masks[i++]);
+            }
+            this.Index(entery);
+            level.add(entery);
         }
 
         /*
-          CT6 [Re-Insert] reinsert All Enteries of nodes in set Q. Enteries
-          from eliminated leaf nodes are reinserted in tree leaves as described
-          in Insert algorithm, but enteries from higher-level nodes must be
-          placed higher in the tree so that leaves of their dependent subtrees
-          will be on the same levels as the leaves of the main tree.
+          STR1 Pack enteries into leaves, then pack nodes of each level into
+          nodes of level above until root is able to hold all of them.
          */
+        if (!level.isEmpty()) {
+            do {
+                level = Rtree.PackLevel(level, min, max);
+            } while (level.size() > RtreeNode.MAX_ROOT_ENTERIES);
+        }
+
+        RtreeNode<T> node = new RtreeNode();
+        node.setMinEnteries(min);
+        node.setMaxEnteries(max);
+        node.replaceChildList(level);
+        this.root = node;
+    }
+
+    /**
+     * Creates immutable copy of this tree packed into flat arrays. Snapshot does not
+     * change when this tree is modified later.
+     * @return packed read-only copy of this tree
+     */
+    public PackedRtree<T> Freeze() {
+        return new PackedRtree(this.root);
+    }
+
+    /**
+     * Writes this tree into file which can be opened by {@code MappedRtree.Open()}.
+     * Objects are not written, only identifiers given to them by the identifier.
+     * @param file - file to be created or overwritten
+     * @param identifier - maps objects to identifiers stored in the file
+     * @throws IOException if file cannot be written
+     */
+    public void StoreMapped(File file, RtreeIdentifier<T> identifier) throws IOException {
+        MappedRtree.Write(this.root, file, identifier);
+    }
 
-        for (RtreeNode orphan : Q) {
-            this.Insert(orphan, (orphan.getLevel() - 1));
+    /**
+     * Writes whole structure of this tree to binary output. Nodes are written in preorder
+     * with their enteries and categories, objects are written by the codec. Restoring the tree by
+     * {@code Read()} rebuilds exactly the same nodes without inserting anything.
+     * @param out - output the tree is written to
+     * @param codec - writes objects stored in the tree
+     * @throws IOException if writing fails
+     */
+    public void Write(DataOutput out, RtreeCodec<T> codec) throws IOException {
+        out.writeInt(STREAM_MAGIC);
+        out.writeInt(STREAM_VERSION);
+        out.writeInt(this.root.getMinEnteries());
+        out.writeInt(this.root.getMaxEnteries());
+        this.WriteNode(this.root, out, codec);
+    }
+
+    /**
+     * Replaces content of this tree by tree written by {@code Write()}. Minimal and
+     * maximal number of enteries in node is restored as well, insertion mode and split
+     * algorithm of this tree are kept.
+     * @param in - input the tree is read from
+     * @param codec - reads objects stored in the tree
+     * @throws IOException if reading fails or input does not contain R-tree
+     */
+    public void Read(DataInput in, RtreeCodec<T> codec) throws IOException {
+        if (in.readInt() != STREAM_MAGIC || in.readInt() != STREAM_VERSION) {
+            throw new IOException("Input does not contain R-tree.");
         }
+        int min = in.readInt();
+        int max = in.readInt();
+
+        IdentityHashMap<T, Object> index = new IdentityHashMap();
+        RtreeNode<T> node = new RtreeNode();
+        node.setMinEnteries(min);
+        node.setMaxEnteries(max);
+        node.replaceChildList(this.ReadChildren(in, codec, index, min, max));
+
+        // tree is changed only when whole input has been read successfully
+        this.root = node;
+        this.enteries.clear();
+        this.enteries.putAll(index);
     }
 
     // <editor-fold defaultstate="collapsed" desc="supporting (sub)algorithms - only private methods">
 
     private void Insert(RtreeNode entery, int level) {
+        // R*-tree remembers which levels already had overflow treated by reinsertion
+        this.Insert(entery, level, (this.mode == Mode.RSTAR)? new BitSet() : null);
+    }
+
+    private void Insert(RtreeNode entery, int level, BitSet overflown) {
 
         // System.out.println("Vkladam : ".concat(entery.toString()));
 
@@ -172,6 +957,21 @@ public class Rtree<T>{
          */
         node.addChildnode(entery);
         while (node.getOwerflow()) {
+            /*
+              OT1 [Overflow treatment] If the level is not the root level and this
+              is the first call of overflow treatment on given level during
+              insertion of one entery, invoke Reinsert instead of SplitNode.
+                  -- levels are counted from leaves, so they survive root split
+             */
+            if (overflown != null && !node.getIsRoot()) {
+                int height = this.getLeafLevel() - node.getLevel();
+                if (!overflown.get(height)) {
+                    overflown.set(height);
+                    this.Reinsert(node, overflown);
+                    return;
+                }
+            }
+
             /*
               AT1 Set N = L (L == leaf) if N was split previously, set NN to be
               resulting second node.
@@ -180,8 +980,12 @@ public class Rtree<T>{
                   -- already known that split was done
                   -- split is performed even on root node
              */
-            split = this.SplitNode(node);
-            // System.out.println("Split : ".concat(split.getA().toString().concat(" a ").concat(split.getB().toString())));
+            split = this.splitPolicy.split(node);
+            if (this.metrics != null) {
+                this.metrics.split();
+            }
+            // System.out.println("Split : ".concat(split.getA().toString()
+            //         .concat(" a ").concat(split.getB().toString())));
 
             RtreeNode parent = node.getParent();
 
@@ -229,18 +1033,16 @@ public class Rtree<T>{
         }
 
         // adjist the rest of the tree;
-        while(node != null) {
-            node.adjustRectangle();
-            node = node.getParent();
-        }
+        this.AdjustPath(node);
     }
 
     private RtreeNode ChooseSubtree(RtreeNode entery, int level) {              // Insert
-        int enlargement = Integer.MAX_VALUE;
-        int area = Integer.MAX_VALUE;
         if (level < 0) {
             level = Integer.MAX_VALUE;
         }
+        if (this.mode == Mode.RSTAR) {
+            return this.RstarChooseSubtree(entery, level);
+        }
         // placing entery E - object; EI - r
 
         // CL1 Set N to be the root node
@@ -248,6 +1050,9 @@ public class Rtree<T>{
 
         // CL2 if N is leaf, return N
         while (node.getLevel() < level && !node.getIsLeaf()) {
+            // minimal values are searched for on each level again
+            int enlargement = Integer.MAX_VALUE;
+            int area = Integer.MAX_VALUE;
             ArrayList<RtreeNode> childSet, nodeSet;
             childSet = node.getChildList();
             if (childSet.isEmpty()) {
@@ -259,7 +1064,7 @@ public class Rtree<T>{
             /* CL3 if N is not a leaf, let F be entery in N whose rectangle
                FI needs least enlargement to include EI.                */
             for (RtreeNode n : childSet) {
-                int e = n.getEnlargement(entery.getRectangle());
+                int e = n.getEnlargement(entery);
                 if (e < enlargement) {
                     nodeSet.clear(); // clear larger enteries
                     nodeSet.add(n);
@@ -296,287 +1101,762 @@ public class Rtree<T>{
         return node;
     }
 
-    private Pair<RtreeNode, RtreeNode> SplitNode(RtreeNode node) {              // node spliting
-        /*
-          divide a set of M + 1 index enteries in two groups
-          Quadratic split and linear split are the same, but use different
-          PickSeeds algorithm
-         */
+    private RtreeNode RstarChooseSubtree(RtreeNode entery, int level) {         // R* Insert
+        // CS1 Set N to be the root node
+        RtreeNode node = this.root;
 
-        /*
-          QS1 [Pick first entery of each group] Apply algorithm PickSeeds to
-          choese two enteries to be first elements of groups. Assign each to
-          a group
-         */
+        // CS2 If N is leaf, return N
+        while (node.getLevel() < level && !node.getIsLeaf()) {
+            ArrayList<RtreeNode> children = node.getChildList();
+            if (children.isEmpty()) {
+                break;
+            }
 
-        ArrayList<RtreeNode> childList = node.getChildList();
-        Pair<RtreeNode, RtreeNode> pair = QadraticPickSeeds(childList);
+            /*
+              CS2.1 If child pointers in N point to nodes the entery is going to
+              be placed into, choose entery whose rectangle needs least overlap
+              enlargement to include new data rectangle. Resolve ties by least
+              area enlargement, then by smallest area.
 
-        RtreeNode groupA = new RtreeNode();
-        groupA.addChildnode(pair.getA());
+              CS2.2 Otherwise choose entery whose rectangle needs least area
+              enlargement, resolve ties by smallest area.
+             */
+            RtreeNode first = children.get(0);
+            boolean overlap = first.getIsLeaf() || (first.getLevel() >= level);
+
+            RtreeNode chosen = null;
+            long bestOverlap = Long.MAX_VALUE;
+            long bestEnlargement = Long.MAX_VALUE;
+            long bestArea = Long.MAX_VALUE;
+
+            for (RtreeNode n : children) {
+                long area = RtreeGeometry.area(n);
+                long enlargement = RtreeGeometry.unionArea(n, entery) - area;
+                long o = 0;
+
+                if (overlap) {
+                    // overlap enlargement with all siblings
+                    for (RtreeNode m : children) {
+                        if (m != n) {
+                            o += RtreeGeometry.unionOverlap(n, entery, m) - RtreeGeometry.overlap(n, m);
+                        }
+                    }
+                }
+
+                if (o < bestOverlap ||
+                   (o == bestOverlap && enlargement < bestEnlargement) ||
+                   (o == bestOverlap && enlargement == bestEnlargement && area < bestArea)) {
+                    chosen = n;
+                    bestOverlap = o;
+                    bestEnlargement = enlargement;
+                    bestArea = area;
+                }
+            }
 
-        RtreeNode groupB = new RtreeNode();
-        groupB.addChildnode(pair.getB());
+            // CS3 Set N to be the child node chosen and repeat from CS2
+            node = chosen;
+        }
+
+        return node;
+    }
 
+    private void Reinsert(RtreeNode node, BitSet overflown) {                    // R* Insert
         /*
-          QS2.1 [check if done] If all enteries have been assigned stop.
+          RI1 For all M + 1 enteries of node N compute distance between centres
+          of their rectangles and centre of bounding rectangle of N.
+
+          RI2 Sort enteries in decreasing order of their distances.
          */
+        final RtreeNode centre = node;
+        ArrayList<RtreeNode> children = node.getChildList();
+        Collections.sort(children, new Comparator<RtreeNode>() {
+            @Override
+            public int compare(RtreeNode a, RtreeNode b) {
+                return Long.compare(RtreeGeometry.centreDistance(centre, b),
+                                    RtreeGeometry.centreDistance(centre, a));
+            }
+        });
 
-        while (!childList.isEmpty()) {
+        /*
+          RI3 Remove first p enteries from N and adjust bounding rectangle of N.
+         */
+        int p = Math.max(1, (int) (node.getMaxEnteries() * REINSERT_FACTOR));
+        ArrayList<RtreeNode> removed = new ArrayList(children.subList(0, p));
+        if (this.metrics != null) {
+            this.metrics.reinsert(p);
+        }
+        for (RtreeNode n : removed) {
+            node.removeChild(n);
+        }
 
-            /*
-              QS3 [select entery to be assigned] Invoke algoritm PickNext to choese
-              next entery to assign. Add it to the group with rectangle which will
-              have to enlarge least to acomodate it.
-             */
+        int height = this.getLeafLevel() - node.getLevel();
+        this.AdjustPath(node);
 
-            node = Rtree.PickNext(childList, groupA, groupB);
-            int da = groupA.getEnlargement(node.getRectangle());
-            int db = groupB.getEnlargement(node.getRectangle());
+        /*
+          RI4 In the sort order, starting with minimum distance (close reinsert),
+          invoke Insert to reinsert the enteries.
+         */
+        for (int i = removed.size() - 1; i >= 0; i--) {
+            this.Insert(removed.get(i), (this.getLeafLevel() - height), overflown);
+        }
+    }
 
-            if (da < db) {
-                groupA.addChildnode(node);
+    private boolean Search(RtreeNode node, Rectangle r, Relation relation, RtreeVisitor<T> visitor) {
+        // depth first, so the only memory needed is the call stack
+        int count = node.getChildnodeCount();
+        if (this.metrics != null) {
+            this.metrics.visit(node.getIsLeaf()? count : 0);
+        }
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (!child.intersects(r)) {
+                continue;
             }
-            else if (da > db) {
-                groupB.addChildnode(node);
+            if (child.getIsEntery()) {
+                if (Rtree.getMatches(child, r, relation)) {
+                    if (!visitor.visit((T) child.getContent())) {
+                        return false;
+                    }
+                }
             }
-            else {
-                /*
-                  resolve ties by adding entery into group:
-                                - with smaller area
-                                - with fewer enteries
-                                - oh, it doesn't matter any more ... pick one!
-                 */
+            else if (relation != Relation.CONTAINS && RtreeGeometry.contains(r, child)) {
+                if (!this.Report(child, visitor)) {
+                    return false;
+                }
+            }
+            else if (relation != Relation.CONTAINS || child.contains(r)) {
+                if (!this.Search(child, r, relation, visitor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
 
-                // smaller area tie resolving
-                if (groupA.getArea() < groupB.getArea()) {
-                    groupA.addChildnode(node);
+    private boolean Search(RtreeNode node, Rectangle r, long mask, RtreeVisitor<T> visitor) {
+        int count = node.getChildnodeCount();
+        if (this.metrics != null) {
+            this.metrics.visit(node.getIsLeaf()? count : 0);
+        }
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if ((child.getMask() & mask) != 0 && child.intersects(r)) {
+                if (child.getIsEntery()) {
+                    if (!visitor.visit((T) child.getContent())) {
+                        return false;
+                    }
                 }
-                else if(groupA.getArea() > groupB.getArea()) {
-                    groupB.addChildnode(node);
+                else if (!this.Search(child, r, mask, visitor)) {
+                    return false;
                 }
+            }
+        }
+        return true;
+    }
 
-                else {
+    private static boolean getMatches(RtreeNode entery, Rectangle r, Relation relation) {
+        switch (relation) {
+            case CONTAINS:
+                return entery.contains(r);
+            case WITHIN:
+                return RtreeGeometry.contains(r, entery);
+            default:
+                return entery.intersects(r);
+        }
+    }
 
-                    // fewer enteries resolving
-                    if (groupA.getChildnodeCount() < groupB.getChildnodeCount()) {
-                        groupA.addChildnode(node);
+    private boolean Search(RtreeNode node, RtreeShape s, RtreeVisitor<T> visitor) {
+        int count = node.getChildnodeCount();
+        if (this.metrics != null) {
+            this.metrics.visit(node.getIsLeaf()? count : 0);
+        }
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (s.intersects(child)) {
+                if (child.getIsEntery()) {
+                    if (!visitor.visit((T) child.getContent())) {
+                        return false;
                     }
-                    else {
-                         // b has fewer child nodes or it doesnt'n matter anymore
-                        groupB.addChildnode(node);
+                }
+                else if (s.contains(child)) {
+                    if (!this.Report(child, visitor)) {
+                        return false;
                     }
                 }
+                else if (!this.Search(child, s, visitor)) {
+                    return false;
+                }
             }
+        }
+        return true;
+    }
 
-            if(childList.isEmpty()) break;
-
-            /*
-              QS2.2 [check if done] if one group has so few enteries that all
-              the rest must be assignet to it in order to have minimum number
-              m, asign them and stop
-             */
+    private boolean Report(RtreeNode node, RtreeVisitor<T> visitor) {
+        /*
+          Whole subtree lies inside the query, so enteries are not tested against
+          it. Only empty enteries are left out, they intersect nothing and would
+          not be found outside such subtree either.
+         */
+        int count = node.getChildnodeCount();
+        if (this.metrics != null) {
+            this.metrics.visit(0);
+        }
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (child.getIsEntery()) {
+                if (!RtreeGeometry.isEmpty(child) && !visitor.visit((T) child.getContent())) {
+                    return false;
+                }
+            }
+            else if (!this.Report(child, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-            if (groupA.getUnderflow() && !groupB.getUnderflow()) {
-                int required = groupA.getMinEnteries() - groupA.getChildnodeCount();
-                if (required >= childList.size()) {
-                    for(RtreeNode m : childList) {
-                        groupA.addChildnode(m);
+    private boolean Search(RtreeNode node, Point p, RtreeVisitor<T> visitor) {
+        int count = node.getChildnodeCount();
+        if (this.metrics != null) {
+            this.metrics.visit(node.getIsLeaf()? count : 0);
+        }
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (child.contains(p)) {
+                if (child.getIsEntery()) {
+                    if (!visitor.visit((T) child.getContent())) {
+                        return false;
                     }
-                    break;
                 }
+                else if (!this.Search(child, p, visitor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean Join(RtreeNode a, RtreeNode b, RtreeJoinVisitor visitor) {
+        /*
+          Rectangles of nodes a and b intersect. Only children lying in the
+          common part of both rectangles can form a pair, others are filtered
+          out before pairs are tested.
+         */
+        int minX = Math.max(a.getMinX(), b.getMinX());
+        int minY = Math.max(a.getMinY(), b.getMinY());
+        int maxX = Math.min(a.getMaxX(), b.getMaxX());
+        int maxY = Math.min(a.getMaxY(), b.getMaxY());
+        ArrayList<RtreeNode> childrenA = Rtree.Restrict(a, minX, minY, maxX, maxY);
+        ArrayList<RtreeNode> childrenB = Rtree.Restrict(b, minX, minY, maxX, maxY);
+        if (childrenA.isEmpty() || childrenB.isEmpty()) {
+            return true;
+        }
 
+        // trees may differ in height, leaf is then joined with nodes of the other tree
+        boolean leafA = childrenA.get(0).getIsEntery();
+        boolean leafB = childrenB.get(0).getIsEntery();
+        if (leafA && !leafB) {
+            for (RtreeNode cb : childrenB) {
+                if (RtreeGeometry.intersects(a, cb) && !Rtree.Join(a, cb, visitor)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (leafB && !leafA) {
+            for (RtreeNode ca : childrenA) {
+                if (RtreeGeometry.intersects(ca, b) && !Rtree.Join(ca, b, visitor)) {
+                    return false;
+                }
             }
+            return true;
+        }
 
-            if (!groupA.getUnderflow() && groupB.getUnderflow()) {
-                int required = groupB.getMinEnteries() - groupB.getChildnodeCount();
-                if (required >= childList.size()) {
-                    for(RtreeNode m : childList) {
-                        groupB.addChildnode(m);
+        for (RtreeNode ca : childrenA) {
+            for (RtreeNode cb : childrenB) {
+                if (RtreeGeometry.intersects(ca, cb)) {
+                    if (leafA) {
+                        if (!visitor.visit(ca.getContent(), cb.getContent())) {
+                            return false;
+                        }
+                    }
+                    else if (!Rtree.Join(ca, cb, visitor)) {
+                        return false;
                     }
-                    break;
                 }
             }
+        }
+        return true;
+    }
 
-        // repeat from QS2
+    private static ArrayList<RtreeNode> Restrict(RtreeNode node, int minX, int minY, int maxX, int maxY) {
+        int count = node.getChildnodeCount();
+        ArrayList<RtreeNode> children = new ArrayList(count);
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (child.getMinX() < maxX && minX < child.getMaxX() &&
+                child.getMinY() < maxY && minY < child.getMaxY()) {
+                children.add(child);
+            }
         }
+        return children;
+    }
 
-        return new Pair(groupA, groupB);
+    private int Count(RtreeNode node, Rectangle r) {
+        int n = 0;
+        int count = node.getChildnodeCount();
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (!child.intersects(r)) {
+                continue;
+            }
+            if (child.getIsEntery()) {
+                n++;
+            }
+            else if (RtreeGeometry.contains(r, child)) {
+                child.aggregate(this.aggregator);
+                n += child.getSize();
+            }
+            else {
+                n += this.Count(child, r);
+            }
+        }
+        return n;
     }
 
-    private static Pair<RtreeNode, RtreeNode>
-        QadraticPickSeeds(ArrayList<RtreeNode> list) {                          // node spliting
-        /*
-          QPS1 [Calculate inefficiency of grouping enteries together]
-          For each pair of enteries E1 and E2 compose rectangle J.
-          Calculate area D = J.getArea - E1.getArea - E2.getArea
-
-          QPS2 [Choese the most wasteful pair] choese pair with largest D
-        */
-        Pair<RtreeNode, RtreeNode> p = null;
-        int d = Integer.MIN_VALUE; // negative numbers mean overlap
-
-        for (RtreeNode a : list) {
-            for(RtreeNode b: list) {
-                if (a != b) {
-                    Rectangle j = a.getRectangle().union(b.getRectangle());
-                    /*
-                     If A nad B are overlaping and J is tightly closing them,
-                     sum of their areaa is greater than area of J
-                     */
-                    int area = (j.height * j.width) - a.getArea() - b.getArea();
-                    if (area > d) {
-                        d = area;
-                        p = new Pair(a, b);
+    private <S> void Aggregate(RtreeNode node, Rectangle r, RtreeAggregator<T, S> aggregator,
+                               Object[] result) {
+        int count = node.getChildnodeCount();
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (!child.intersects(r)) {
+                continue;
+            }
+            if (child.getIsEntery() || RtreeGeometry.contains(r, child)) {
+                child.aggregate(aggregator);
+                if (child.getSize() == 0) {
+                    // subtree holding only empty enteries has no summary
+                    continue;
+                }
+                S s = (S) child.getSummary(aggregator);
+                result[0] = (result[0] == null)? s : aggregator.combine((S) result[0], s);
+            }
+            else {
+                this.Aggregate(child, r, aggregator, result);
+            }
+        }
+    }
+
+    private RtreeNode<T> FindEntry(T object, Rectangle r) {                     // finds node entry containing object
+        return this.FindEntry(this.root, object, r);
+    }
+
+    private RtreeNode<T> FindEntry(RtreeNode node, T object, Rectangle r) {
+        int count = node.getChildnodeCount();
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (child.intersects(r)) {
+                if (child.getIsEntery()) {
+                    if (child.getContent() == object) {
+                        return child;
+                    }
+                }
+                else {
+                    RtreeNode<T> entery = this.FindEntry(child, object, r);
+                    if (entery != null) {
+                        return entery;
                     }
                 }
             }
         }
+        return null;
+    }
+
+    private void Move(RtreeNode entery, Rectangle r) {                          // update
+        RtreeNode leaf = entery.getParent();
+        RtreeNode parent = leaf.getParent();
 
-        if (p != null) {
-            list.remove(p.getA());
-            list.remove(p.getB());
+        // object stays in its leaf, leaf may grow but not beyond its parent
+        if (leaf.getIsRoot() || leaf.contains(r) ||
+            (!parent.getIsRoot() && parent.contains(r))) {
+            entery.setRectangle(r);
+            this.AdjustPath(leaf);
+            return;
         }
-        return p;
+
+        // object left the area of its subtree, it has to be placed elsewhere
+        leaf.detachChild(entery);
+        ArrayList<Pair<RtreeNode, Integer>> Q = new ArrayList();
+        this.CondenseTree(Collections.singletonList(leaf), Q);
+        this.ReinsertOrphans(Q);
+
+        entery.setRectangle(r);
+        this.Insert(entery, -1);
     }
 
-    private static Pair<RtreeNode, RtreeNode>
-        LinearPickSeeds(ArrayList<RtreeNode> list) {                            // node spliting  *** yet to be implemented
-            return null;                                                        // not used
+    private RtreeNode<T> getEntery(T object) {                                 // finds entry without search
+        if (object instanceof RtreeNodeLinker) {
+            RtreeNode entery = ((RtreeNodeLinker) object).getNode();
+            if (entery == null || entery.getContent() != object || !this.getContains(entery)) {
+                return null;
+            }
+            return entery;
+        }
+        Object known = this.enteries.get(object);
+        if (known instanceof ArrayList) {
+            ArrayList<RtreeNode<T>> copies = (ArrayList) known;
+            return copies.get(copies.size() - 1);
+        }
+        return (RtreeNode<T>) known;
     }
 
-    private static RtreeNode // Pair<RtreeNode, RtreeNode> - for future optimalization
-        PickNext(ArrayList<RtreeNode> list, RtreeNode groupA, RtreeNode groupB) // node spliting
-    {
-        /*
-          PN1 [Determine cost of putting each entery in each group]
-          For each entery E not yet in group calculate D1 and D2
-          - area increase required to include enteri into group A
-          (group 1) and group B (group 2)
-         */
+    private RtreeNode<T> getEntery(T object, Rectangle r) {
+        Object known = this.enteries.get(object);
+        if (known instanceof ArrayList) {
+            // object inserted more than once, the copy within given bounds is chosen
+            ArrayList<RtreeNode<T>> copies = (ArrayList) known;
+            for (RtreeNode<T> entery : copies) {
+                if (entery.intersects(r)) {
+                    return entery;
+                }
+            }
+            return copies.get(copies.size() - 1);
+        }
 
-        int diff;
-        diff = -1; // intentionaly lesser than zero
-        RtreeNode chosenOne = null;
-        for (RtreeNode node : list) {
-           int d1 = groupA.getEnlargement(node.getRectangle());
-           int d2 = groupB.getEnlargement(node.getRectangle());
-           int df = abs(d1 - d2);
+        // linked object inserted more than once links only one of its enteries
+        RtreeNode<T> entery = this.getEntery(object);
+        if (object instanceof RtreeNodeLinker && (entery == null || !entery.intersects(r))) {
+            RtreeNode<T> found = this.FindEntry(object, r);
+            if (found != null) {
+                return found;
+            }
+        }
+        return entery;
+    }
 
-           /*
-             PN2 [Find the entery with greatis preference for the group]
-             choese any entery with maximum diference between D1 and D2
-            */
+    private void Index(RtreeNode<T> entery) {
+        Rtree.Index(this.enteries, entery);
+    }
 
-           if (df > diff) {
-               chosenOne = node;
-               diff = df;
-           }
+    private static void Index(IdentityHashMap index, RtreeNode entery) {
+        // linked objects know their enteries themselves
+        Object object = entery.getContent();
+        if (object instanceof RtreeNodeLinker) {
+            return;
+        }
+        Object known = index.put(object, entery);
+        if (known != null) {
+            // object inserted more than once is indexed by list of all its enteries
+            ArrayList<RtreeNode> copies;
+            if (known instanceof ArrayList) {
+                copies = (ArrayList) known;
+            }
+            else {
+                copies = new ArrayList(2);
+                copies.add((RtreeNode) known);
+            }
+            copies.add(entery);
+            index.put(object, copies);
         }
-        list.remove(chosenOne);
-        return chosenOne;
     }
 
-    private ArrayList<RtreeNode> Search(Rectangle r) {
-        ArrayList<RtreeNode> enteries = new ArrayList();
-        ArrayDeque<RtreeNode> nodes = new ArrayDeque();
-        nodes.add(this.root);
+    private void Unindex(RtreeNode<T> entery) {
+        T object = entery.getContent();
+        Object known = this.enteries.get(object);
+        if (known == entery) {
+            this.enteries.remove(object);
+        }
+        else if (known instanceof ArrayList) {
+            ArrayList<RtreeNode<T>> copies = (ArrayList) known;
+            copies.remove(entery);
+            if (copies.size() == 1) {
+                this.enteries.put(object, copies.get(0));
+            }
+        }
+    }
 
-        while (!nodes.isEmpty()) {
-            RtreeNode n = nodes.poll();
-            ArrayList<RtreeNode> children;
-            if (n != null) {
-                children = n.getChildList();
+    private void Unindex(RtreeNode node, ArrayList<T> removed,
+                         ArrayList<Pair<RtreeNode, Integer>> Q) {
+        /*
+          All enteries of subtree cut off the tree are removed, except empty
+          ones, which match no window. Those go back to the leaves with the
+          other orphans, as a query would not find them either.
+         */
+        int count = node.getChildnodeCount();
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (child.getIsEntery()) {
+                if (RtreeGeometry.isEmpty(child)) {
+                    Q.add(new Pair(child, 0));
+                }
+                else {
+                    this.Unindex(child);
+                    removed.add((T) child.getContent());
+                }
             }
             else {
-                children = new ArrayList();
+                this.Unindex(child, removed, Q);
             }
-            for(RtreeNode node : children) {
-                if (r.intersects(node.getRectangle())) {
-                    nodes.add(node);
-                    if (node.getContent() != null) {
-                        enteries.add(node);
-                    }
-                }
+        }
+    }
 
+    private boolean getContains(RtreeNode node) {
+        // linker may point to node of another tree or to removed node
+        while (node.getParent() != null) {
+            RtreeNode parent = node.getParent();
+            if (!parent.hasChildnode(node)) {
+                return false;
             }
+            node = parent;
         }
+        return node == this.root;
+    }
 
-        return enteries;
+    private void WriteNode(RtreeNode node, DataOutput out, RtreeCodec<T> codec) throws IOException {
+        int count = node.getChildnodeCount();
+        boolean leaf = (count == 0) || node.getChildnode(0).getIsEntery();
+        out.writeInt(count);
+        out.writeBoolean(leaf);
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (leaf) {
+                // rectangles of inner nodes are calculated again when read
+                out.writeInt(child.getMinX());
+                out.writeInt(child.getMinY());
+                out.writeInt(child.getMaxX() - child.getMinX());
+                out.writeInt(child.getMaxY() - child.getMinY());
+                codec.write((T) child.getContent(), out);
+                out.writeLong(child.getMask());
+            }
+            else {
+                this.WriteNode(child, out, codec);
+            }
+        }
     }
 
-    private ArrayList<RtreeNode> Search(Point p) {
-        ArrayList<RtreeNode> enteries = new ArrayList();
-        ArrayDeque<RtreeNode> nodes = new ArrayDeque();
-        nodes.add(this.root);
+    private ArrayList<RtreeNode> ReadChildren(DataInput in, RtreeCodec<T> codec,
+                                              IdentityHashMap<T, Object> index,
+                                              int min, int max) throws IOException {
+        int count = in.readInt();
+        boolean leaf = in.readBoolean();
+        if (count < 0 || count > Math.max(max, RtreeNode.MAX_ROOT_ENTERIES)) {
+            throw new IOException("Input does not contain R-tree.");
+        }
 
-        while (!nodes.isEmpty()) {
-            RtreeNode n = nodes.poll();
-            ArrayList<RtreeNode> children;
-            if (n != null) {
-                children = n.getChildList();
+        ArrayList<RtreeNode> children = new ArrayList(count);
+        for (int i = 0; i < count; i++) {
+            if (leaf) {
+                Rectangle r = new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                RtreeNode<T> entery = new RtreeNode();
+                entery.setContent(codec.read(in), r);
+                // categories of inner nodes are united as children are added
+                entery.setMask(in.readLong());
+                Rtree.Index(index, entery);
+                children.add(entery);
             }
             else {
-                children = new ArrayList();
+                RtreeNode node = new RtreeNode();
+                node.setMinEnteries(min);
+                node.setMaxEnteries(max);
+                node.replaceChildList(this.ReadChildren(in, codec, index, min, max));
+                children.add(node);
             }
-            for(RtreeNode node : children) {
-                if (node.getRectangle().contains(p)) {
-                    nodes.add(node);
-                    if (node.getContent() != null) {
-                        enteries.add(node);
-                    }
-                }
+        }
+        return children;
+    }
 
+    private void CondenseTree(Collection<RtreeNode> leaves,
+                              ArrayList<Pair<RtreeNode, Integer>> Q) {         // delete
+        /*
+          CT1 [Inicialize] Set N = L and Let Q to be set of eliminated nodes.
+          Set Q to be empty.
+              -- there may be many leaves L, nodes are processed from the
+                 deepest level up, so each node is visited once and only
+                 after all of its changed children
+              -- each eliminated child is remembered with height of the
+                 level it has to be reinserted to, counted from leaves
+         */
+        int leafLevel = this.getLeafLevel();
+        Set<RtreeNode> seen = Collections.newSetFromMap(new IdentityHashMap());
+        PriorityQueue<RtreeNode> nodes = new PriorityQueue(11, Rtree.DEEPEST_FIRST);
+        for (RtreeNode leaf : leaves) {
+            if (seen.add(leaf)) {
+                nodes.add(leaf);
             }
         }
 
-        return enteries;
+        while (!nodes.isEmpty()) {
+            RtreeNode node = nodes.poll();
+            RtreeNode parent = node.getParent();
+
+            /*
+              CT2 [Find parent entry] If N is a root skyp to CT6. Otherwise let
+              P to be parent of N and let En be N's entry in P.
+
+              CT3 [eliminate under-full node] If N has fewer than m enteries
+              delete En from P and add N to set Q
+             */
+            if (!node.getIsRoot() && node.getUnderflow()) {
+                int height = leafLevel - node.getLevel();
+                int count = node.getChildnodeCount();
+                for (int i = 0; i < count; i++) {
+                    Q.add(new Pair(node.getChildnode(i), height));
+                }
+                parent.detachChild(node);
+            }
+
+            /*
+              CT4 [Adjust covering rectangle] If N has not been eliminated,
+              adjust En's I to tightly contain all enteries in N
+             */
+            else {
+                node.adjustRectangle();
+            }
+
+            /*
+              CT5 [Move up one level in tree] set N = P and repeat from CT2
+             */
+            if (parent != null && seen.add(parent)) {
+                nodes.add(parent);
+            }
+        }
     }
 
-    private RtreeNode<T> FindEntry(T object, Rectangle r) {                     // finds node entry containing object
-        ArrayList<RtreeNode> list = this.Search(r);
-        RtreeNode<T> result = null;
-        for (RtreeNode<T> node : list) {
-            if (node.getContent() == object) {
-                result = node;
-                break;
+    private void ReinsertOrphans(ArrayList<Pair<RtreeNode, Integer>> Q) {      // delete
+        if (this.metrics != null) {
+            this.metrics.orphans(Q.size());
+        }
+        /*
+          CT6 [Re-Insert] reinsert All Enteries of nodes in set Q. Enteries
+          from eliminated leaf nodes are reinserted in tree leaves as described
+          in Insert algorithm, but enteries from higher-level nodes must be
+          placed higher in the tree so that leaves of their dependent subtrees
+          will be on the same levels as the leaves of the main tree.
+              -- highest subtrees go first, if whole tree has been eliminated
+                 the first of them becomes the only child of the root
+         */
+        Collections.sort(Q, new Comparator<Pair<RtreeNode, Integer>>() {
+            @Override
+            public int compare(Pair<RtreeNode, Integer> a, Pair<RtreeNode, Integer> b) {
+                return Integer.compare(b.getB(), a.getB());
+            }
+        });
+
+        for (Pair<RtreeNode, Integer> orphan : Q) {
+            int level = this.getLeafLevel() - orphan.getB();
+            if (level < 0) {
+                this.root.addChildnode(orphan.getA());
+                this.AdjustPath(this.root);
+            }
+            else {
+                this.Insert(orphan.getA(), level);
             }
         }
-        return result;
     }
 
-    private RtreeNode<T> FindLeaf(T object, Rectangle r) {                      // find leaf containing entry with given object
-        RtreeNode node = this.FindEntry(object, r);
-        if (node != null) {
+    private void AdjustPath(RtreeNode node) {
+        // adjust rectangles from given node up to the root, in batch later
+        if (this.deferred != null) {
+            this.deferred.add(node);
+            return;
+        }
+        while (node != null) {
+            node.adjustRectangle();
             node = node.getParent();
         }
-        return node;
     }
 
-    private void DeleteEntery(RtreeNode node, T object) {
-        if (node == null) {
-            return;
+    private void AdjustTree(Collection<RtreeNode> changed) {
+        // adjust rectangles of all given nodes and their ancestors, each only once
+        Set<RtreeNode> seen = Collections.newSetFromMap(new IdentityHashMap());
+        PriorityQueue<RtreeNode> nodes = new PriorityQueue(11, Rtree.DEEPEST_FIRST);
+        for (RtreeNode node : changed) {
+            if (seen.add(node)) {
+                nodes.add(node);
+            }
         }
-        ArrayList<RtreeNode> list = node.getChildList();
 
-        for (RtreeNode<T> entery : list) {
-            if(entery.getContent() == object) {
-                node.removeChild(entery);
-                break;
+        while (!nodes.isEmpty()) {
+            RtreeNode node = nodes.poll();
+            node.adjustRectangle();
+            RtreeNode parent = node.getParent();
+            if (parent != null && seen.add(parent)) {
+                nodes.add(parent);
             }
         }
-        if (!node.getIsRoot()) {
-            node.getParent().adjustRectangle();
+    }
+
+    private static final Comparator<RtreeNode> DEEPEST_FIRST = new Comparator<RtreeNode>() {
+        @Override
+        public int compare(RtreeNode a, RtreeNode b) {
+            return Integer.compare(b.getLevel(), a.getLevel());
         }
+    };
+
+    private static ArrayList<RtreeNode>
+        PackLevel(ArrayList<RtreeNode> list, int min, int max) {                // bulk loading
+        /*
+          STR2 [Slice] Let P = ceil(r / M) be number of nodes needed for r
+          rectangles and S = ceil(sqrt(P)). Sort rectangles by x coordinate of
+          their centre and divide them into S vertical slices.
+         */
+        ArrayList<RtreeNode> nodes = new ArrayList();
+        int count = list.size();
+        int pages = (count + max - 1) / max;
+        int slices = (int) Math.ceil(Math.sqrt(pages));
+
+        Collections.sort(list, Rtree.CENTRE_X);
+
+        int from = 0;
+        for (int s = 0; s < slices; s++) {
+            // slices are sized evenly so the last one does not end up under-full
+            int to = from + (count - from) / (slices - s);
+            List<RtreeNode> slice = list.subList(from, to);
+
+            /*
+              STR3 [Tile] Sort each slice by y coordinate of centre and pack
+              consecutive runs of rectangles into nodes.
+             */
+            Collections.sort(slice, Rtree.CENTRE_Y);
+
+            int size = slice.size();
+            int groups = (size + max - 1) / max;
+            int start = 0;
+            for (int g = 0; g < groups; g++) {
+                int end = start + (size - start) / (groups - g);
+                RtreeNode node = new RtreeNode();
+                node.setMinEnteries(min);
+                node.setMaxEnteries(max);
+                node.replaceChildList(new ArrayList(slice.subList(start, end)));
+                nodes.add(node);
+                start = end;
+            }
+            from = to;
+        }
+
+        return nodes;
     }
 
-    private void DeleteNode(RtreeNode node) {
-        // if node is not root, remove it from it's parent
-        if (!node.getIsRoot()) {
-            node.getParent().removeChild(node);
-            node.getParent().adjustRectangle();
+    private static final Comparator<RtreeNode> CENTRE_X = new Comparator<RtreeNode>() {
+        @Override
+        public int compare(RtreeNode a, RtreeNode b) {
+            return Long.compare((long) a.getMinX() + a.getMaxX(), (long) b.getMinX() + b.getMaxX());
+        }
+    };
+
+    private static final Comparator<RtreeNode> CENTRE_Y = new Comparator<RtreeNode>() {
+        @Override
+        public int compare(RtreeNode a, RtreeNode b) {
+            return Long.compare((long) a.getMinY() + a.getMaxY(), (long) b.getMinY() + b.getMaxY());
+        }
+    };
+
+    private int getLeafLevel() {
+        RtreeNode node = this.root;
+        while (!node.getIsLeaf()) {
+            node = (RtreeNode) node.getChildList().get(0);
         }
-        // throw node away ...
+        return node.getLevel();
     }
     // </editor-fold>
 
@@ -0,0 +1,374 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import com.github.xvaisr.jamie.engine.geometry.basic.Point;
+import com.github.xvaisr.jamie.engine.geometry.shapes3D.Cube;
+import com.github.xvaisr.jamie.tools.structures.Pair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Three dimensional R-tree indexing objects by their bounding cubes. Insertion follows
+ * Guttman's R-tree with least volume enlargement and quadratic split, deleting condenses
+ * the tree and reinserts orphaned subtrees. Cubes are closed, so objects touching the
+ * query cube are found as well, same as by {@code Cube.intersects()}.
+ * @author Roman Vais
+ * @param <T>
+ */
+public class Rtree3D<T> {
+
+    private static final int MIN_ENTERIES = 4;
+    private static final int MAX_ENTERIES = 30;
+
+    private Rtree3DNode<T> root;
+    private final int min;
+    private final int max;
+    private int size;
+
+    public Rtree3D() {
+        this(MIN_ENTERIES, MAX_ENTERIES);
+    }
+
+    public Rtree3D(int min, int max) {
+        if (min < 1 || max < 2 * min) {
+            throw new IllegalArgumentException("Node must hold at least twice the minimal number of enteries.");
+        }
+        this.root = new Rtree3DNode();
+        this.min = min;
+        this.max = max;
+        this.size = 0;
+    }
+
+    /**
+     * Returns number of objects stored in this tree.
+     * @return number of objects
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public ArrayList<T> Find(Point p) {
+        return this.Find(new Cube(p, p));
+    }
+
+    public ArrayList<T> Find(Cube c) {
+        final ArrayList<T> objects = new ArrayList();
+        this.Find(c, new RtreeVisitor<T>() {
+            @Override
+            public boolean visit(T object) {
+                return objects.add(object);
+            }
+        });
+        return objects;
+    }
+
+    /**
+     * Passes every object whose cube intersects given cube to the visitor.
+     * @param c - cube objects must intersect
+     * @param visitor - callback receiving found objects
+     * @return true if search went through whole tree, false if visitor stopped it
+     */
+    public boolean Find(Cube c, RtreeVisitor<T> visitor) {
+        return this.Search(this.root, c, visitor);
+    }
+
+    /**
+     * Returns at most k objects closest to given point, ordered by distance. Distance of
+     * an object is distance of the point to the object's cube.
+     * @param p - point to which distance is measured
+     * @param k - maximal number of returned objects
+     * @return list of nearest objects
+     */
+    public ArrayList<T> Nearest(Point p, int k) {
+        /*
+          Best-first traversal, nodes and enteries wait in queue ordered by
+          distance of their boxes. Entery taken from the queue is closer than
+          anything left in it.
+         */
+        ArrayList<T> objects = new ArrayList();
+        PriorityQueue<Pair<Rtree3DNode, Long>> queue = new PriorityQueue(11, Rtree3D.CLOSEST);
+        queue.add(new Pair(this.root, 0L));
+        while (objects.size() < k && !queue.isEmpty()) {
+            Rtree3DNode node = queue.poll().getA();
+            if (node.getIsEntery()) {
+                objects.add((T) node.getContent());
+                continue;
+            }
+            int count = node.getChildnodeCount();
+            for (int i = 0; i < count; i++) {
+                Rtree3DNode child = node.getChildnode(i);
+                queue.add(new Pair(child, child.getDistance(p)));
+            }
+        }
+        return objects;
+    }
+
+    public void Insert(T object, Cube c) {
+        this.Insert(new Rtree3DNode(object, c), 0);
+        this.size++;
+    }
+
+    public void Delete(T object, Cube c) {
+        /*
+          D1 Find leaf containing the object, stop if there is none.
+          D2 Remove entery from the leaf and condense the tree.
+         */
+        Rtree3DNode<T> entery = this.FindEntry(this.root, object, c);
+        if (entery == null) {
+            return;
+        }
+        Rtree3DNode leaf = entery.getParent();
+        leaf.removeChild(entery);
+        this.size--;
+        this.CondenseTree(leaf);
+
+        /*
+          D3 If the root has only one child which is not entery, make the child
+          new root.
+         */
+        while (this.root.getChildnodeCount() == 1 && !this.root.getChildnode(0).getIsEntery()) {
+            this.root = this.root.getChildnode(0);
+            this.root.clearParent();
+        }
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="supporting (sub)algorithms - only private methods">
+
+    private void Insert(Rtree3DNode entery, int height) {
+        /*
+          I1 Descend from the root to the node of given height (leaves have
+          height 0) choosing child needing least volume enlargement, ties are
+          resolved by the least volume.
+         */
+        Rtree3DNode node = this.root;
+        int h = node.getHeight();
+        while (h > height && node.getChildnodeCount() > 0) {
+            Rtree3DNode best = null;
+            long enlargement = Long.MAX_VALUE;
+            long volume = Long.MAX_VALUE;
+            int count = node.getChildnodeCount();
+            for (int i = 0; i < count; i++) {
+                Rtree3DNode child = node.getChildnode(i);
+                long e = child.getEnlargement(entery);
+                long v = child.getVolume();
+                if (e < enlargement || (e == enlargement && v < volume)) {
+                    best = child;
+                    enlargement = e;
+                    volume = v;
+                }
+            }
+            node = best;
+            h--;
+        }
+
+        /*
+          I2 Add entery to the node, split overflowing nodes up the tree, new
+          root is created when the root splits.
+         */
+        node.addChildnode(entery, this.max);
+        while (node.getChildnodeCount() > this.max) {
+            Rtree3DNode created = this.Split(node);
+            Rtree3DNode parent = node.getParent();
+            if (parent == null) {
+                this.root = new Rtree3DNode();
+                this.root.addChildnode(node, this.max);
+                this.root.addChildnode(created, this.max);
+                return;
+            }
+            parent.calculateBounds();
+            parent.addChildnode(created, this.max);
+            node = parent;
+        }
+
+        // I3 Adjust boxes on the path to the root
+        for (node = node.getParent(); node != null; node = node.getParent()) {
+            node.calculateBounds();
+        }
+    }
+
+    private Rtree3DNode Split(Rtree3DNode node) {
+        /*
+          QS1 Pick seeds, pair of children wasting the most volume when put
+          into one node. Node keeps the first group, second group goes to
+          a new node.
+         */
+        int count = node.getChildnodeCount();
+        ArrayList<Rtree3DNode> list = new ArrayList(count);
+        for (int i = 0; i < count; i++) {
+            list.add(node.getChildnode(i));
+        }
+        int seedA = 0, seedB = 1;
+        long worst = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                // volume of union less volumes of both children
+                long d = list.get(i).getEnlargement(list.get(j)) - list.get(j).getVolume();
+                if (d > worst) {
+                    worst = d;
+                    seedA = i;
+                    seedB = j;
+                }
+            }
+        }
+
+        Rtree3DNode groupA = node;
+        Rtree3DNode groupB = new Rtree3DNode();
+        Rtree3DNode a = list.get(seedA);
+        Rtree3DNode b = list.get(seedB);
+        list.remove(seedB);
+        list.remove(seedA);
+        groupA.clearNode();
+        groupA.addChildnode(a, this.max);
+        groupB.addChildnode(b, this.max);
+
+        /*
+          QS2 If one group needs all remaining children to reach minimal
+          number of enteries, give them to it. QS3 Otherwise pick child with
+          the greatest preference for one group and add it to the group
+          needing less enlargement, then smaller volume, then fewer enteries.
+         */
+        while (!list.isEmpty()) {
+            if (groupA.getChildnodeCount() + list.size() <= this.min) {
+                for (Rtree3DNode n : list) {
+                    groupA.addChildnode(n, this.max);
+                }
+                break;
+            }
+            if (groupB.getChildnodeCount() + list.size() <= this.min) {
+                for (Rtree3DNode n : list) {
+                    groupB.addChildnode(n, this.max);
+                }
+                break;
+            }
+
+            int next = 0;
+            long preference = -1;
+            for (int i = 0; i < list.size(); i++) {
+                long p = Math.abs(groupA.getEnlargement(list.get(i)) - groupB.getEnlargement(list.get(i)));
+                if (p > preference) {
+                    preference = p;
+                    next = i;
+                }
+            }
+            Rtree3DNode n = list.remove(next);
+            long da = groupA.getEnlargement(n);
+            long db = groupB.getEnlargement(n);
+            boolean toA = (da != db)? (da < db) :
+                          (groupA.getVolume() != groupB.getVolume())? (groupA.getVolume() < groupB.getVolume()) :
+                          (groupA.getChildnodeCount() <= groupB.getChildnodeCount());
+            (toA? groupA : groupB).addChildnode(n, this.max);
+        }
+        return groupB;
+    }
+
+    private void CondenseTree(Rtree3DNode leaf) {
+        /*
+          CT1 Walk from the leaf to the root. Node having fewer than minimal
+          number of enteries is removed from its parent and its children are
+          remembered together with height they have to be reinserted at.
+          Other nodes only adjust their boxes.
+         */
+        ArrayList<Pair<Rtree3DNode, Integer>> orphans = new ArrayList();
+        Rtree3DNode node = leaf;
+        int height = 0;
+        while (node.getParent() != null) {
+            Rtree3DNode parent = node.getParent();
+            if (node.getChildnodeCount() < this.min) {
+                parent.removeChild(node);
+                int count = node.getChildnodeCount();
+                for (int i = 0; i < count; i++) {
+                    orphans.add(new Pair(node.getChildnode(i), height));
+                }
+            }
+            else {
+                node.calculateBounds();
+            }
+            node = parent;
+            height++;
+        }
+        node.calculateBounds();
+
+        /*
+          CT2 Reinsert orphans, highest subtrees first, so leaves of all of
+          them end up on the same level as the leaves of the tree.
+         */
+        Collections.sort(orphans, new Comparator<Pair<Rtree3DNode, Integer>>() {
+            @Override
+            public int compare(Pair<Rtree3DNode, Integer> a, Pair<Rtree3DNode, Integer> b) {
+                return Integer.compare(b.getB(), a.getB());
+            }
+        });
+        for (Pair<Rtree3DNode, Integer> orphan : orphans) {
+            this.Insert(orphan.getA(), orphan.getB());
+        }
+    }
+
+    private boolean Search(Rtree3DNode node, Cube c, RtreeVisitor<T> visitor) {
+        int count = node.getChildnodeCount();
+        for (int i = 0; i < count; i++) {
+            Rtree3DNode child = node.getChildnode(i);
+            if (child.intersects(c)) {
+                if (child.getIsEntery()) {
+                    if (!visitor.visit((T) child.getContent())) {
+                        return false;
+                    }
+                }
+                else if (!this.Search(child, c, visitor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private Rtree3DNode<T> FindEntry(Rtree3DNode node, T object, Cube c) {
+        int count = node.getChildnodeCount();
+        for (int i = 0; i < count; i++) {
+            Rtree3DNode child = node.getChildnode(i);
+            if (child.intersects(c)) {
+                if (child.getIsEntery()) {
+                    if (child.getContent() == object) {
+                        return child;
+                    }
+                }
+                else {
+                    Rtree3DNode<T> entery = this.FindEntry(child, object, c);
+                    if (entery != null) {
+                        return entery;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static final Comparator<Pair<Rtree3DNode, Long>> CLOSEST = new Comparator<Pair<Rtree3DNode, Long>>() {
+        @Override
+        public int compare(Pair<Rtree3DNode, Long> a, Pair<Rtree3DNode, Long> b) {
+            // enteries go before nodes of the same distance
+            int d = Long.compare(a.getB(), b.getB());
+            if (d == 0) {
+                return Boolean.compare(b.getA().getIsEntery(), a.getA().getIsEntery());
+            }
+            return d;
+        }
+    };
+
+    // </editor-fold>
+}
@@ -0,0 +1,200 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import com.github.xvaisr.jamie.engine.geometry.basic.Point;
+import com.github.xvaisr.jamie.engine.geometry.shapes3D.Cube;
+import java.util.Arrays;
+
+/**
+ * Node of three dimensional R-tree. Bounding box is kept in primitive coordinates
+ * {minX, minY, minZ, maxX, maxY, maxZ}, boxes are closed, so touching boxes intersect.
+ * Entery is a node holding an object and no children.
+ * @author Roman Vais
+ * @param <T>
+ */
+final class Rtree3DNode<T> {
+
+    private Rtree3DNode parent;
+    private Rtree3DNode[] children;
+    private int count;
+    private final int[] bounds;
+    private T object;
+
+    Rtree3DNode() {
+        this.bounds = new int[6];
+        this.count = 0;
+    }
+
+    Rtree3DNode(T object, Cube c) {
+        this();
+        this.object = object;
+        Point a = c.getBottomLeftNear();
+        Point b = c.getTopRightFar();
+        this.bounds[0] = a.x();
+        this.bounds[1] = a.y();
+        this.bounds[2] = a.z();
+        this.bounds[3] = b.x();
+        this.bounds[4] = b.y();
+        this.bounds[5] = b.z();
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="methods - node itself">
+    Rtree3DNode getParent() {
+        return this.parent;
+    }
+
+    T getContent() {
+        return this.object;
+    }
+
+    boolean getIsEntery() {
+        return this.object != null;
+    }
+
+    boolean getIsLeaf() {
+        return (this.count == 0 && this.object == null) ||
+               (this.count > 0 && this.children[0].object != null);
+    }
+
+    int getHeight() {
+        // leaf has height 0, entery -1
+        int height = -1;
+        Rtree3DNode node = this;
+        while (!node.getIsEntery()) {
+            height++;
+            if (node.count == 0) {
+                break;
+            }
+            node = node.children[0];
+        }
+        return height;
+    }
+
+    int[] getBounds() {
+        return this.bounds;
+    }
+
+    long getVolume() {
+        return Rtree3DNode.Volume(this.bounds[0], this.bounds[1], this.bounds[2],
+                                  this.bounds[3], this.bounds[4], this.bounds[5]);
+    }
+
+    long getEnlargement(Rtree3DNode n) {
+        // volume of union with given node less volume of this node
+        int[] b = n.bounds;
+        if (this.count == 0 && this.object == null) {
+            return n.getVolume();
+        }
+        return Rtree3DNode.Volume(Math.min(this.bounds[0], b[0]), Math.min(this.bounds[1], b[1]),
+                                  Math.min(this.bounds[2], b[2]), Math.max(this.bounds[3], b[3]),
+                                  Math.max(this.bounds[4], b[4]), Math.max(this.bounds[5], b[5]))
+               - this.getVolume();
+    }
+
+    boolean intersects(Cube c) {
+        Point a = c.getBottomLeftNear();
+        Point b = c.getTopRightFar();
+        return this.bounds[0] <= b.x() && a.x() <= this.bounds[3] &&
+               this.bounds[1] <= b.y() && a.y() <= this.bounds[4] &&
+               this.bounds[2] <= b.z() && a.z() <= this.bounds[5];
+    }
+
+    long getDistance(Point p) {
+        // squared distance of point to the closest point of the box
+        long dx = Math.max(0, Math.max((long) this.bounds[0] - p.x(), (long) p.x() - this.bounds[3]));
+        long dy = Math.max(0, Math.max((long) this.bounds[1] - p.y(), (long) p.y() - this.bounds[4]));
+        long dz = Math.max(0, Math.max((long) this.bounds[2] - p.z(), (long) p.z() - this.bounds[5]));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    static long Volume(int x1, int y1, int z1, int x2, int y2, int z2) {
+        return ((long) x2 - x1) * ((long) y2 - y1) * ((long) z2 - z1);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="methods for child nodes management">
+    int getChildnodeCount() {
+        return this.count;
+    }
+
+    Rtree3DNode getChildnode(int i) {
+        return this.children[i];
+    }
+
+    void addChildnode(Rtree3DNode n, int capacity) {
+        // whole node and the entery overflowing it before its split fit in first array
+        if (this.children == null) {
+            this.children = new Rtree3DNode[capacity + 1];
+        }
+        else if (this.count == this.children.length) {
+            this.children = Arrays.copyOf(this.children, this.count + (this.count >> 1) + 1);
+        }
+        boolean empty = (this.count == 0);
+        this.children[this.count++] = n;
+        n.parent = this;
+
+        int[] b = n.bounds;
+        if (empty) {
+            System.arraycopy(b, 0, this.bounds, 0, 6);
+        }
+        else {
+            for (int i = 0; i < 3; i++) {
+                this.bounds[i] = Math.min(this.bounds[i], b[i]);
+                this.bounds[i + 3] = Math.max(this.bounds[i + 3], b[i + 3]);
+            }
+        }
+    }
+
+    void removeChild(Rtree3DNode n) {
+        for (int i = 0; i < this.count; i++) {
+            if (this.children[i] == n) {
+                System.arraycopy(this.children, i + 1, this.children, i, this.count - i - 1);
+                this.children[--this.count] = null;
+                this.calculateBounds();
+                return;
+            }
+        }
+    }
+
+    void clearNode() {
+        if (this.children != null) {
+            Arrays.fill(this.children, null);
+        }
+        this.count = 0;
+        Arrays.fill(this.bounds, 0);
+    }
+
+    void clearParent() {
+        this.parent = null;
+    }
+
+    void calculateBounds() {
+        if (this.count == 0) {
+            Arrays.fill(this.bounds, 0);
+            return;
+        }
+        System.arraycopy(this.children[0].bounds, 0, this.bounds, 0, 6);
+        for (int c = 1; c < this.count; c++) {
+            int[] b = this.children[c].bounds;
+            for (int i = 0; i < 3; i++) {
+                this.bounds[i] = Math.min(this.bounds[i], b[i]);
+                this.bounds[i + 3] = Math.max(this.bounds[i + 3], b[i + 3]);
+            }
+        }
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,43 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+/**
+ * Summarises objects stored in R-tree, e.g. total strength of units. Summaries of
+ * subtrees are kept in nodes, so {@code Rtree.Aggregate()} reads them instead of
+ * visiting every object. Combining must be associative and must not depend on order
+ * of its arguments.
+ * @author Roman Vais
+ * @param <T> type of objects in the tree
+ * @param <S> type of summary
+ */
+public interface RtreeAggregator<T, S> {
+
+    /**
+     * Returns summary of single object.
+     * @param object - object stored in the tree
+     * @return summary of the object
+     */
+    public S summarize(T object);
+
+    /**
+     * Combines summaries of two disjoint groups of objects.
+     * @param a - summary of the first group
+     * @param b - summary of the second group
+     * @return summary of both groups together
+     */
+    public S combine(S a, S b);
+}
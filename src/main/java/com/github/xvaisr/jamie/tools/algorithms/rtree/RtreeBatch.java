@@ -0,0 +1,111 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import com.github.xvaisr.jamie.tools.structures.Pair;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collection of insertions and deletions to be applied to R-tree at once by
+ * {@code Rtree.Apply()}. Points are treated the same way as by {@code Rtree}.
+ * @author Roman Vais
+ * @param <T>
+ */
+public class RtreeBatch<T> {
+
+    private final ArrayList<Pair<T, Rectangle>> insertions;
+    private final ArrayList<Pair<T, Rectangle>> deletions;
+    private long[] masks;
+
+    public RtreeBatch() {
+        this.insertions = new ArrayList();
+        this.deletions = new ArrayList();
+        this.masks = new long[16];
+    }
+
+    public void Insert(T object, Point p) {
+        this.Insert(object, p, Rtree.ALL_CATEGORIES);
+    }
+
+    public void Insert(T object, Rectangle r) {
+        this.Insert(object, r, Rtree.ALL_CATEGORIES);
+    }
+
+    public void Insert(T object, Point p, long mask) {
+        this.Collect(object, new Rectangle((p.x - 1), (p.y - 1), 2, 2), mask);
+    }
+
+    /**
+     * Collects insertion of object belonging to given categories, same as
+     * {@code Rtree.Insert(object, r, mask)}.
+     * @param object - inserted object
+     * @param r - bounding rectangle of the object
+     * @param mask - bitmask of categories of the object
+     */
+    public void Insert(T object, Rectangle r, long mask) {
+        this.Collect(object, new Rectangle(r), mask);
+    }
+
+    public void Delete(T object, Point p) {
+        this.deletions.add(new Pair(object, new Rectangle((p.x - 1), (p.y - 1), 2, 2)));
+    }
+
+    public void Delete(T object, Rectangle r) {
+        this.deletions.add(new Pair(object, new Rectangle(r)));
+    }
+
+    private void Collect(T object, Rectangle r, long mask) {
+        /*
+          Rectangle is already owned by the batch, caller may reuse its own
+          rectangle right after adding, the same way as after Rtree.Insert().
+         */
+        int i = this.insertions.size();
+        if (i == this.masks.length) {
+            this.masks = Arrays.copyOf(this.masks, i + (i >> 1) + 1);
+        }
+        this.masks[i] = mask;
+        this.insertions.add(new Pair(object, r));
+    }
+
+    /**
+     * Removes all collected operations, so the batch can be reused.
+     */
+    public void clear() {
+        this.insertions.clear();
+        this.deletions.clear();
+    }
+
+    public boolean getIsEmpty() {
+        return this.insertions.isEmpty() && this.deletions.isEmpty();
+    }
+
+    List<Pair<T, Rectangle>> getInsertions() {
+        return Collections.unmodifiableList(this.insertions);
+    }
+
+    long getMask(int i) {
+        return this.masks[i];
+    }
+
+    List<Pair<T, Rectangle>> getDeletions() {
+        return Collections.unmodifiableList(this.deletions);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import com.github.xvaisr.jamie.engine.geometry.shapes2D.LineSegment;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Iterator returning objects stored in R-tree whose rectangles are crossed by given line
+ * segment or ray, in order of distance from its start at which the segment enters them.
+ * Tree is traversed best-first: nodes and enteries wait in priority queue ordered by
+ * the distance at which the segment enters their rectangles, found by slab test, so
+ * nodes the segment misses are never opened and nodes further along the segment are
+ * opened only when asked for next object. Rectangles are taken as closed areas, the
+ * same as for nearest neighbour search. Iterator must not be used after the tree has
+ * been modified.
+ * @author Roman Vais
+ * @param <T>
+ */
+public class RtreeCastIterator<T> implements Iterator<T> {
+
+    private final PriorityQueue<Candidate> queue;
+    private final double originX, originY;
+    private final double directionX, directionY;
+    private final double limit;     // 1 for segment, infinity for ray
+    private final double length;
+    private double distance;
+
+    RtreeCastIterator(RtreeNode root, LineSegment s, boolean ray) {
+        this.queue = new PriorityQueue();
+        this.originX = s.getK().x();
+        this.originY = s.getK().y();
+        this.directionX = s.getL().x() - this.originX;
+        this.directionY = s.getL().y() - this.originY;
+        this.limit = ray? Double.POSITIVE_INFINITY : 1;
+        this.length = Math.sqrt(this.directionX * this.directionX + this.directionY * this.directionY);
+        this.distance = 0;
+        this.queue.add(new Candidate(root, 0));
+    }
+
+    @Override
+    public boolean hasNext() {
+        /*
+          Take candidate entered first from the queue. If it is a node, put all
+          its children crossed by the segment to the queue and repeat. If it is
+          entery, the segment enters no other entery sooner.
+         */
+        while (!this.queue.isEmpty()) {
+            Candidate c = this.queue.peek();
+            if (c.node.getIsEntery()) {
+                return true;
+            }
+            this.queue.poll();
+
+            int count = c.node.getChildnodeCount();
+            for (int i = 0; i < count; i++) {
+                RtreeNode child = c.node.getChildnode(i);
+                double t = this.Enter(child);
+                if (t >= 0) {
+                    this.queue.add(new Candidate(child, t));
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Candidate c = this.queue.poll();
+        this.distance = c.t * this.length;
+        return (T) c.node.getContent();
+    }
+
+    /**
+     * Returns distance from the start of the segment at which it enters rectangle of the
+     * object last returned by {@code next()}, zero if the segment starts inside it.
+     * @return distance of the last returned object
+     */
+    public double getDistance() {
+        return this.distance;
+    }
+
+    private double Enter(RtreeNode n) {
+        /*
+          Slab test, the segment is clipped by the pair of lines bounding the
+          rectangle on each axis. Returns parameter of entry point, 0 at start
+          of the segment and 1 at its end, or -1 if the segment misses.
+         */
+        double near = 0;
+        double far = this.limit;
+
+        if (this.directionX == 0) {
+            if (this.originX < n.getMinX() || this.originX > n.getMaxX()) {
+                return -1;
+            }
+        }
+        else {
+            double t1 = (n.getMinX() - this.originX) / this.directionX;
+            double t2 = (n.getMaxX() - this.originX) / this.directionX;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+
+        if (this.directionY == 0) {
+            if (this.originY < n.getMinY() || this.originY > n.getMaxY()) {
+                return -1;
+            }
+        }
+        else {
+            double t1 = (n.getMinY() - this.originY) / this.directionY;
+            double t2 = (n.getMaxY() - this.originY) / this.directionY;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+
+        return (near <= far)? near : -1;
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+        private final RtreeNode node;
+        private final double t;
+
+        private Candidate(RtreeNode node, double t) {
+            this.node = node;
+            this.t = t;
+        }
+
+        @Override
+        public int compareTo(Candidate c) {
+            return Double.compare(this.t, c.t);
+        }
+    }
+}
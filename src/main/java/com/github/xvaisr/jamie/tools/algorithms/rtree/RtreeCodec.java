@@ -0,0 +1,45 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts objects stored in R-tree to binary form and back, used when tree is
+ * written by {@code Rtree.Write()} and restored by {@code Rtree.Read()}.
+ * @author Roman Vais
+ * @param <T>
+ */
+public interface RtreeCodec<T> {
+
+    /**
+     * Writes single object.
+     * @param object - object stored in the tree
+     * @param out - output the object is written to
+     * @throws IOException if writing fails
+     */
+    public void write(T object, DataOutput out) throws IOException;
+
+    /**
+     * Reads single object written by {@code write()}.
+     * @param in - input the object is read from
+     * @return restored object
+     * @throws IOException if reading fails
+     */
+    public T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,173 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import java.awt.Rectangle;
+import java.util.List;
+
+/**
+ * Arithmetic on rectangles used by R-tree algorithms. Methods compute areas, margins
+ * and overlaps directly from coordinates, so unlike {@code Rectangle.union()} they do
+ * not allocate any new rectangles. Results are long values so large rectangles do not
+ * overflow.
+ * Bounds given as arrays have form {minX, minY, maxX, maxY}.
+ * @author Roman Vais
+ */
+final class RtreeGeometry {
+
+    private RtreeGeometry() {
+    }
+
+    static long area(RtreeNode n) {
+        return ((long) n.getMaxX() - n.getMinX()) * ((long) n.getMaxY() - n.getMinY());
+    }
+
+    static long area(int[] b) {
+        return (long) (b[2] - b[0]) * (b[3] - b[1]);
+    }
+
+    static long margin(int[] b) {
+        return (long) (b[2] - b[0]) + (b[3] - b[1]);
+    }
+
+    static long unionArea(RtreeNode a, RtreeNode b) {
+        long w = (long) Math.max(a.getMaxX(), b.getMaxX()) - Math.min(a.getMinX(), b.getMinX());
+        long h = (long) Math.max(a.getMaxY(), b.getMaxY()) - Math.min(a.getMinY(), b.getMinY());
+        return w * h;
+    }
+
+    static long enlargement(RtreeNode a, RtreeNode b) {
+        return RtreeGeometry.unionArea(a, b) - RtreeGeometry.area(a);
+    }
+
+    static long overlap(RtreeNode a, RtreeNode b) {
+        long w = (long) Math.min(a.getMaxX(), b.getMaxX()) - Math.max(a.getMinX(), b.getMinX());
+        long h = (long) Math.min(a.getMaxY(), b.getMaxY()) - Math.max(a.getMinY(), b.getMinY());
+        return (w > 0 && h > 0)? w * h : 0;
+    }
+
+    static long overlap(int[] a, int[] b) {
+        long w = (long) Math.min(a[2], b[2]) - Math.max(a[0], b[0]);
+        long h = (long) Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+        return (w > 0 && h > 0)? w * h : 0;
+    }
+
+    static long unionOverlap(RtreeNode a, RtreeNode r, RtreeNode b) {
+        // overlap of node b with union of nodes a and r
+        int x = Math.min(a.getMinX(), r.getMinX());
+        int y = Math.min(a.getMinY(), r.getMinY());
+        long w = (long) Math.min(Math.max(a.getMaxX(), r.getMaxX()), b.getMaxX())
+                 - Math.max(x, b.getMinX());
+        long h = (long) Math.min(Math.max(a.getMaxY(), r.getMaxY()), b.getMaxY())
+                 - Math.max(y, b.getMinY());
+        return (w > 0 && h > 0)? w * h : 0;
+    }
+
+    static long centreDistance(RtreeNode a, RtreeNode b) {
+        // squared distance of doubled centres, only used for ordering
+        long dx = ((long) a.getMinX() + a.getMaxX()) - ((long) b.getMinX() + b.getMaxX());
+        long dy = ((long) a.getMinY() + a.getMaxY()) - ((long) b.getMinY() + b.getMaxY());
+        return dx * dx + dy * dy;
+    }
+
+    static boolean intersects(RtreeNode a, RtreeNode b) {
+        // same as Rectangle.intersects(), empty rectangles intersect nothing
+        int ax1 = a.getMinX(), ay1 = a.getMinY(), ax2 = a.getMaxX(), ay2 = a.getMaxY();
+        int bx1 = b.getMinX(), by1 = b.getMinY(), bx2 = b.getMaxX(), by2 = b.getMaxY();
+        return ax1 < ax2 && ay1 < ay2 && bx1 < bx2 && by1 < by2 &&
+               ax1 < bx2 && bx1 < ax2 && ay1 < by2 && by1 < ay2;
+    }
+
+    static boolean isEmpty(RtreeNode n) {
+        // zero width or height, such rectangles intersect nothing
+        return n.getMaxX() <= n.getMinX() || n.getMaxY() <= n.getMinY();
+    }
+
+    static boolean contains(Rectangle r, RtreeNode n) {
+        // whether node lies completely inside of the rectangle
+        return r.x <= n.getMinX() && r.y <= n.getMinY() &&
+               n.getMaxX() <= (long) r.x + r.width && n.getMaxY() <= (long) r.y + r.height;
+    }
+
+    static long mortonCode(RtreeNode n) {
+        // Z-order value of node centre, to be compared as unsigned number
+        long x = (((long) n.getMinX() + n.getMaxX()) >> 1) ^ 0x80000000L;
+        long y = (((long) n.getMinY() + n.getMaxY()) >> 1) ^ 0x80000000L;
+        return (RtreeGeometry.spread(x) << 1) | RtreeGeometry.spread(y);
+    }
+
+    static long hilbertCode(RtreeNode n) {
+        /*
+          Distance of node centre along Hilbert curve filling whole plane of
+          int coordinates, to be compared as unsigned number. Each step takes
+          the quadrant of current square the point lies in, then rotates the
+          point, so the curve continues in that quadrant in right direction.
+         */
+        long mask = 0xFFFFFFFFL;
+        long x = ((((long) n.getMinX() + n.getMaxX()) >> 1) ^ 0x80000000L) & mask;
+        long y = ((((long) n.getMinY() + n.getMaxY()) >> 1) ^ 0x80000000L) & mask;
+        long d = 0;
+        for (long s = 1L << 31; s > 0; s >>= 1) {
+            int rx = ((x & s) != 0)? 1 : 0;
+            int ry = ((y & s) != 0)? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = mask - x;
+                    y = mask - y;
+                }
+                long t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    private static long spread(long v) {
+        // spreads lower 32 bits of value to even bits of the result
+        v &= 0xFFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    static int[][] prefixBounds(List<RtreeNode> list, boolean suffix) {
+        /*
+          Bounding boxes of first k + 1 enteries (prefix) or of enteries from
+          k to the end (suffix) of the list
+         */
+        int count = list.size();
+        int[][] bounds = new int[count][];
+        int[] b = null;
+        for (int i = 0; i < count; i++) {
+            int k = suffix? (count - 1 - i) : i;
+            RtreeNode n = list.get(k);
+            if (b == null) {
+                b = new int[] {n.getMinX(), n.getMinY(), n.getMaxX(), n.getMaxY()};
+            }
+            else {
+                b = new int[] {Math.min(b[0], n.getMinX()), Math.min(b[1], n.getMinY()),
+                               Math.max(b[2], n.getMaxX()), Math.max(b[3], n.getMaxY())};
+            }
+            bounds[k] = b;
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+/**
+ * Callback receiving identifiers of objects found by search of {@code MappedRtree}.
+ * @author Roman Vais
+ */
+public interface RtreeIdVisitor {
+
+    /**
+     * Receives identifier of single object found by the search.
+     * @param id - identifier of found object
+     * @return true to continue searching, false to stop the search
+     */
+    public boolean visit(long id);
+}
@@ -0,0 +1,32 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+/**
+ * Maps objects stored in R-tree to numeric identifiers, so the tree can be written to
+ * a file which cannot hold objects themselves.
+ * @author Roman Vais
+ * @param <T>
+ */
+public interface RtreeIdentifier<T> {
+
+    /**
+     * Returns identifier of given object.
+     * @param object - object stored in the tree
+     * @return identifier written instead of the object
+     */
+    public long identify(T object);
+}
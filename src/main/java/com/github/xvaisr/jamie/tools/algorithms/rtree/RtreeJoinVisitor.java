@@ -0,0 +1,33 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+/**
+ * Callback receiving pairs of objects found by join of two R-trees one by one.
+ * @author Roman Vais
+ * @param <T> type of objects in the first tree
+ * @param <U> type of objects in the second tree
+ */
+public interface RtreeJoinVisitor<T, U> {
+
+    /**
+     * Receives single pair of objects whose rectangles intersect.
+     * @param a - object from the first tree
+     * @param b - object from the second tree
+     * @return true to continue the join, false to stop it
+     */
+    public boolean visit(T a, U b);
+}
@@ -0,0 +1,176 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of work done by R-tree operations. Tree counts only when metrics are given
+ * to it by {@code Rtree.setMetrics()}, otherwise counting costs a single null check.
+ * Counters may be updated by concurrent queries and read at any time, values read
+ * while operations run are not mutually consistent.
+ * @author Roman Vais
+ */
+public class RtreeMetrics {
+
+    private final LongAdder queries;
+    private final LongAdder nodesVisited;
+    private final LongAdder enteriesTested;
+    private final LongAdder inserts;
+    private final LongAdder splits;
+    private final LongAdder reinserts;
+    private final LongAdder deletes;
+    private final LongAdder orphans;
+
+    public RtreeMetrics() {
+        this.queries = new LongAdder();
+        this.nodesVisited = new LongAdder();
+        this.enteriesTested = new LongAdder();
+        this.inserts = new LongAdder();
+        this.splits = new LongAdder();
+        this.reinserts = new LongAdder();
+        this.deletes = new LongAdder();
+        this.orphans = new LongAdder();
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="counting - called by tree">
+    void query() {
+        this.queries.increment();
+    }
+
+    void visit(int enteries) {
+        this.nodesVisited.increment();
+        if (enteries > 0) {
+            this.enteriesTested.add(enteries);
+        }
+    }
+
+    void insert() {
+        this.inserts.increment();
+    }
+
+    void split() {
+        this.splits.increment();
+    }
+
+    void reinsert(int enteries) {
+        this.reinserts.add(enteries);
+    }
+
+    void delete() {
+        this.deletes.increment();
+    }
+
+    void orphans(int enteries) {
+        this.orphans.add(enteries);
+    }
+    // </editor-fold>
+
+    public long getQueries() {
+        return this.queries.sum();
+    }
+
+    public long getNodesVisited() {
+        return this.nodesVisited.sum();
+    }
+
+    /**
+     * Returns number of enteries whose rectangles were tested by queries, i.e. number of
+     * children of visited leaves.
+     * @return number of tested enteries
+     */
+    public long getEnteriesTested() {
+        return this.enteriesTested.sum();
+    }
+
+    public long getInserts() {
+        return this.inserts.sum();
+    }
+
+    public long getSplits() {
+        return this.splits.sum();
+    }
+
+    /**
+     * Returns number of enteries removed from overflowing nodes and inserted again by
+     * R*-tree overflow treatment.
+     * @return number of reinserted enteries
+     */
+    public long getReinserts() {
+        return this.reinserts.sum();
+    }
+
+    public long getDeletes() {
+        return this.deletes.sum();
+    }
+
+    /**
+     * Returns number of enteries and subtrees of eliminated under-full nodes which had to
+     * be reinserted by CondenseTree.
+     * @return number of orphans
+     */
+    public long getOrphans() {
+        return this.orphans.sum();
+    }
+
+    public double getNodesPerQuery() {
+        long q = this.getQueries();
+        return (q == 0)? 0 : (double) this.getNodesVisited() / q;
+    }
+
+    public double getEnteriesPerQuery() {
+        long q = this.getQueries();
+        return (q == 0)? 0 : (double) this.getEnteriesTested() / q;
+    }
+
+    public double getSplitsPerInsert() {
+        long i = this.getInserts();
+        return (i == 0)? 0 : (double) this.getSplits() / i;
+    }
+
+    public double getReinsertsPerInsert() {
+        long i = this.getInserts();
+        return (i == 0)? 0 : (double) this.getReinserts() / i;
+    }
+
+    public double getOrphansPerDelete() {
+        long d = this.getDeletes();
+        return (d == 0)? 0 : (double) this.getOrphans() / d;
+    }
+
+    /**
+     * Sets all counters to zero.
+     */
+    public void reset() {
+        this.queries.reset();
+        this.nodesVisited.reset();
+        this.enteriesTested.reset();
+        this.inserts.reset();
+        this.splits.reset();
+        this.reinserts.reset();
+        this.deletes.reset();
+        this.orphans.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("queries %d (%.1f nodes, %.1f enteries each), "
+                + "inserts %d (%.3f splits, %.3f reinserts each), deletes %d (%.3f orphans each)",
+                this.getQueries(), this.getNodesPerQuery(), this.getEnteriesPerQuery(),
+                this.getInserts(), this.getSplitsPerInsert(), this.getReinsertsPerInsert(),
+                this.getDeletes(), this.getOrphansPerDelete());
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Iterator returning objects stored in R-tree in order of their increasing distance
+ * from given point. Tree is traversed best-first: nodes and enteries wait in priority
+ * queue ordered by minimal distance (MINDIST) of their rectangles to the point, so only
+ * nodes which may contain next nearest object are ever opened. Distance of an object is
+ * distance of the point to the object's bounding rectangle, zero if the point lies in it.
+ * Iterator must not be used after the tree has been modified.
+ * @author Roman Vais
+ * @param <T>
+ */
+public class RtreeNearestIterator<T> implements Iterator<T> {
+
+    private final PriorityQueue<Candidate> queue;
+    private final Point p;
+    private final double maxDistance; // squared
+    private double distance;
+
+    RtreeNearestIterator(RtreeNode root, Point p, double maxDistance) {
+        this.queue = new PriorityQueue();
+        this.p = p;
+        this.maxDistance = maxDistance * maxDistance;
+        this.distance = 0;
+        this.queue.add(new Candidate(root, 0));
+    }
+
+    @Override
+    public boolean hasNext() {
+        /*
+          NN1 Take candidate nearest to the point from the queue. If it is
+          a node, put all its children closer than maximal distance to the
+          queue and repeat. If it is entery, no other entery can be closer.
+         */
+        while (!this.queue.isEmpty()) {
+            Candidate c = this.queue.peek();
+            if (c.node.getIsEntery()) {
+                return true;
+            }
+            this.queue.poll();
+
+            int count = c.node.getChildnodeCount();
+            for (int i = 0; i < count; i++) {
+                RtreeNode child = c.node.getChildnode(i);
+                long d = RtreeNearestIterator.MinDistance(this.p, child);
+                if (d <= this.maxDistance) {
+                    this.queue.add(new Candidate(child, d));
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Candidate c = this.queue.poll();
+        this.distance = Math.sqrt(c.distance);
+        return (T) c.node.getContent();
+    }
+
+    /**
+     * Returns distance of the object last returned by {@code next()} from the point.
+     * @return distance of the last returned object
+     */
+    public double getDistance() {
+        return this.distance;
+    }
+
+    static long MinDistance(Point p, Rectangle r) {
+        // squared distance of point to the closest point of rectangle
+        long dx = Math.max(0, Math.max((long) r.x - p.x, (long) p.x - ((long) r.x + r.width)));
+        long dy = Math.max(0, Math.max((long) r.y - p.y, (long) p.y - ((long) r.y + r.height)));
+        return dx * dx + dy * dy;
+    }
+
+    static long MinDistance(Point p, RtreeNode n) {
+        // same as above, straight from node coordinates
+        long dx = Math.max(0, Math.max((long) n.getMinX() - p.x, (long) p.x - n.getMaxX()));
+        long dy = Math.max(0, Math.max((long) n.getMinY() - p.y, (long) p.y - n.getMaxY()));
+        return dx * dx + dy * dy;
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+        private final RtreeNode node;
+        private final long distance;
+
+        private Candidate(RtreeNode node, long distance) {
+            this.node = node;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Candidate c) {
+            return Long.compare(this.distance, c.distance);
+        }
+    }
+}
@@ -18,41 +18,62 @@ package com.github.xvaisr.jamie.tools.algorithms.rtree;
 import java.awt.Point;
 import java.util.ArrayList;
 import java.awt.Rectangle;
+import java.util.Arrays;
 
 /**
- *
+ * Node of R-tree. Bounding rectangle is kept in primitive coordinates {minX, minY, maxX,
+ * maxY} and child nodes in an array allocated only when first child is added, so
+ * enteries (nodes holding objects) carry no collections and no rectangle objects.
+ * Number, summary and categories of subtree are kept apart and only by nodes needing
+ * them, enteries count themselves and are summarised straight from their objects.
  * @author Roman Vasis
  * @param <T>
  */
 public class RtreeNode<T> {
-    private final int MIN_ENTERIES = 4;
-    private final int MAX_ENTERIES = 30;
-    private final int MIN_ROOT_ENTERIES = 1;
-    private final int MAX_ROOT_ENTERIES = 2;
+    private static final int MIN_ENTERIES = 4;
+    private static final int MAX_ENTERIES = 30;
+    private static final int MIN_ROOT_ENTERIES = 1;
+    static final int MAX_ROOT_ENTERIES = 2;
+
+    private static final class Totals {
+        int size = -1;
+        Object summary = null;
+        long mask = 0;
+    }
 
     private RtreeNode parentNode;
-    private ArrayList<RtreeNode> children;
-    private Rectangle r;
+    private RtreeNode[] children;
+    private int count;
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+    private boolean bounded;
     private T object;
     private int minEnteries;
     private int maxEnteries;
     private boolean change;
     private int level;
+    private Totals totals;
 
     public RtreeNode() {
         this.parentNode = null;
-        this.r = null;
+        this.children = null;
+        this.count = 0;
+        this.bounded = false;
         this.object = null;
-        this.children = new ArrayList();
         this.minEnteries = MIN_ENTERIES;
         this.maxEnteries = MAX_ENTERIES;
         this.change = false;
         this.level = 0;
+        this.totals = null;
     }
 
     public RtreeNode(ArrayList<RtreeNode> list) {
         this();
-        this.children.addAll(list);
+        for (RtreeNode node : list) {
+            this.append(node);
+        }
         calculateRectangle();
     }
 
@@ -69,8 +90,8 @@ public class RtreeNode<T> {
             this.minEnteries = this.parentNode.getMinEnteries();
             this.maxEnteries = this.parentNode.getMaxEnteries();
 
-            for (RtreeNode node : this.children) {
-                node.setParent(this);
+            for (int i = 0; i < this.count; i++) {
+                this.children[i].setParent(this);
             }
             this.change = false;
         }
@@ -81,9 +102,9 @@ public class RtreeNode<T> {
     }
 
     public boolean getIsLeaf() {
-        return ((this.children.isEmpty() && this.object == null) ||
-                ((this.children.size() >= 1) &&
-                 (this.children.get(0).getContent() != null))
+        return ((this.count == 0 && this.object == null) ||
+                ((this.count >= 1) &&
+                 (this.children[0].getContent() != null))
                );
     }
 
@@ -91,14 +112,89 @@ public class RtreeNode<T> {
         return this.object == null && this.parentNode == null;
     }
 
+    /**
+     * Returns copy of bounding rectangle of this node. Empty node has empty rectangle.
+     * Every call allocates, so algorithms of the tree use coordinate getters instead
+     * and this method is left to users of the tree.
+     * @return bounding rectangle of this node
+     */
     public Rectangle getRectangle() {
         this.adjustRectangle();
-        return (this.r == null)? new Rectangle() : this.r;
+        if (!this.bounded) {
+            return new Rectangle();
+        }
+        return new Rectangle(this.minX, this.minY, (this.maxX - this.minX), (this.maxY - this.minY));
+    }
+
+    public int getMinX() {
+        this.adjustRectangle();
+        return this.minX;
+    }
+
+    public int getMinY() {
+        this.adjustRectangle();
+        return this.minY;
+    }
+
+    public int getMaxX() {
+        this.adjustRectangle();
+        return this.maxX;
+    }
+
+    public int getMaxY() {
+        this.adjustRectangle();
+        return this.maxY;
+    }
+
+    /**
+     * Tests whether bounding rectangle of this node intersects given rectangle. Same as
+     * {@code r.intersects(getRectangle())}, empty rectangles intersect nothing.
+     * @param r - tested rectangle
+     * @return true if rectangles intersect
+     */
+    public boolean intersects(Rectangle r) {
+        this.adjustRectangle();
+        if (r.width <= 0 || r.height <= 0 || this.maxX <= this.minX || this.maxY <= this.minY) {
+            return false;
+        }
+        return (r.x < this.maxX && this.minX < (long) r.x + r.width &&
+                r.y < this.maxY && this.minY < (long) r.y + r.height);
+    }
+
+    /**
+     * Tests whether bounding rectangle of this node contains given rectangle. Same as
+     * {@code getRectangle().contains(r)}.
+     * @param r - tested rectangle
+     * @return true if given rectangle lies inside of this node's rectangle
+     */
+    public boolean contains(Rectangle r) {
+        this.adjustRectangle();
+        if (r.width <= 0 || r.height <= 0 || this.maxX <= this.minX || this.maxY <= this.minY) {
+            return false;
+        }
+        return (r.x >= this.minX && r.y >= this.minY &&
+                (long) r.x + r.width <= this.maxX && (long) r.y + r.height <= this.maxY);
+    }
+
+    /**
+     * Tests whether bounding rectangle of this node contains given point. Same as
+     * {@code getRectangle().contains(p)}, right and bottom edges are not included.
+     * @param p - tested point
+     * @return true if point lies inside of this node's rectangle
+     */
+    public boolean contains(Point p) {
+        this.adjustRectangle();
+        return (p.x >= this.minX && p.x < this.maxX && p.y >= this.minY && p.y < this.maxY);
     }
 
     public void clearNode() {
-        this.r = null;
-        this.children.clear();
+        this.invalidateAggregate();
+        this.bounded = false;
+        if (this.children != null) {
+            Arrays.fill(this.children, 0, this.count, null);
+        }
+        this.count = 0;
+        this.recalculateMask();
     }
 
     public void setMinEnteries(int e) {
@@ -123,28 +219,113 @@ public class RtreeNode<T> {
 
     public int getEnlargement(Rectangle r) {
         // If node doesn't have rectangle enlargement equals enlarging rectangle
-        if (this.r == null) {
+        if (!this.bounded) {
             return (r.height * r.width);
         }
 
         // otherwise enlarge and calculate enlargement
-        Rectangle u = this.r.union(r);
-        return (u.width * u.height) - (this.r.width * this.r.height);
+        return this.getEnlargement(r.x, r.y, r.x + r.width, r.y + r.height);
+    }
+
+    /**
+     * Returns enlargement of this node needed to include given node, without creating
+     * any rectangles.
+     * @param n - node to be included
+     * @return area enlargement
+     */
+    public int getEnlargement(RtreeNode n) {
+        n.adjustRectangle();
+        if (!this.bounded) {
+            return (n.maxX - n.minX) * (n.maxY - n.minY);
+        }
+        return this.getEnlargement(n.minX, n.minY, n.maxX, n.maxY);
+    }
+
+    private int getEnlargement(int x1, int y1, int x2, int y2) {
+        int w = Math.max(this.maxX, x2) - Math.min(this.minX, x1);
+        int h = Math.max(this.maxY, y2) - Math.min(this.minY, y1);
+        return (w * h) - ((this.maxX - this.minX) * (this.maxY - this.minY));
+    }
+
+    /**
+     * Returns number of objects in subtree of this node. Value is valid only after
+     * {@code aggregate()} has been called since the last change of the subtree.
+     * @return number of objects in subtree
+     */
+    public int getSize() {
+        if (this.object != null) {
+            return 1;
+        }
+        return (this.totals != null)? this.totals.size : -1;
+    }
+
+    /**
+     * Estimates number of objects in subtree of this node from numbers of children
+     * along its leftmost path. Unlike {@code getSize()} it is always available and
+     * reads nothing but the path, so concurrent readers may call it freely.
+     * @return estimated number of objects in subtree
+     */
+    long estimateSize() {
+        long n = 1;
+        RtreeNode node = this;
+        while (node.object == null) {
+            if (node.count == 0) {
+                return 0;
+            }
+            n *= node.count;
+            node = node.children[0];
+        }
+        return n;
+    }
+
+    /**
+     * Returns summary of objects in subtree of this node, valid under the same
+     * conditions as {@code getSize()}. Enteries keep no summary and return null.
+     * @return summary made by the aggregator given to {@code aggregate()}
+     */
+    public Object getSummary() {
+        return (this.object == null && this.totals != null)? this.totals.summary : null;
+    }
+
+    Object getSummary(RtreeAggregator aggregator) {
+        if (this.object != null) {
+            return aggregator.summarize(this.object);
+        }
+        return this.getSummary();
+    }
+
+    /**
+     * Returns categories of entery, or union of categories of all enteries in subtree
+     * of node. Unions are kept up to date by every change of children or categories.
+     * @return bitmask of categories
+     */
+    public long getMask() {
+        if (this.totals != null) {
+            return this.totals.mask;
+        }
+        return (this.object != null)? -1L : 0;
+    }
+
+    private Totals totals() {
+        if (this.totals == null) {
+            this.totals = new Totals();
+        }
+        return this.totals;
     }
 
     public int getArea() {
-        Rectangle u = this.getRectangle();
-        return (u.width * u.height);
+        this.adjustRectangle();
+        return (this.maxX - this.minX) * (this.maxY - this.minY);
     }
 
     public boolean getOwerflow() {
-        return (this.children.size() > this.maxEnteries) ||
-                (this.getIsRoot() && this.children.size() > MAX_ROOT_ENTERIES);
+        return (this.count > this.maxEnteries) ||
+                (this.getIsRoot() && this.count > MAX_ROOT_ENTERIES);
     }
 
     public boolean getUnderflow() {
-        return (this.children.size() < this.minEnteries) ||
-                (this.getIsRoot() && this.children.size() < MIN_ROOT_ENTERIES);
+        return (this.count < this.minEnteries) ||
+                (this.getIsRoot() && this.count < MIN_ROOT_ENTERIES);
     }
 
     public int  getLevel() {
@@ -160,69 +341,248 @@ public class RtreeNode<T> {
     }
 
     private void calculateRectangle() {
-        if (this.children.isEmpty()) {
-            this.r = null;
+        this.change = false;
+        if (this.count == 0) {
+            this.bounded = false;
+            this.minX = this.minY = this.maxX = this.maxY = 0;
+            return;
+        }
+
+        RtreeNode n = this.children[0];
+        n.adjustRectangle();
+        int x1 = n.minX, y1 = n.minY, x2 = n.maxX, y2 = n.maxY;
+        for (int i = 1; i < this.count; i++) {
+            n = this.children[i];
+            n.adjustRectangle();
+            x1 = Math.min(x1, n.minX);
+            y1 = Math.min(y1, n.minY);
+            x2 = Math.max(x2, n.maxX);
+            y2 = Math.max(y2, n.maxY);
+        }
+        this.setBounds(x1, y1, x2, y2);
+    }
+
+    /**
+     * Calculates number and summary of objects in subtree of this node, unless they are
+     * known from previous call. Only subtrees changed in the meantime are visited.
+     * Enteries with empty rectangle are not counted, no query can find them.
+     * @param aggregator - summarises objects, may be null when only number is needed
+     */
+    public void aggregate(RtreeAggregator aggregator) {
+        if (this.object != null) {
+            return;
+        }
+        Totals t = this.totals();
+        if (t.size >= 0) {
             return;
         }
 
-        Rectangle s = new Rectangle();
-        for (RtreeNode n : this.children) {
-            s = s.union(n.getRectangle());
+        // empty enteries intersect no window, so they are left out as queries leave them
+        int n = 0;
+        Object s = null;
+        for (int i = 0; i < this.count; i++) {
+            RtreeNode child = this.children[i];
+            if (child.object != null && RtreeGeometry.isEmpty(child)) {
+                continue;
+            }
+            child.aggregate(aggregator);
+            int k = child.getSize();
+            if (k == 0) {
+                continue;
+            }
+            if (aggregator != null) {
+                Object c = child.getSummary(aggregator);
+                s = (n == 0)? c : aggregator.combine(s, c);
+            }
+            n += k;
+        }
+        t.size = n;
+        t.summary = s;
+    }
+
+    private void includeMask(long m) {
+        // new categories are added to this node and nodes above it
+        RtreeNode node = this;
+        while (node != null && (node.getMask() | m) != node.getMask()) {
+            node.totals().mask |= m;
+            node = node.parentNode;
+        }
+    }
+
+    private void recalculateMask() {
+        // categories may be gone, unions are built again up to the first unchanged one
+        RtreeNode node = this;
+        while (node != null && node.object == null) {
+            long m = 0;
+            for (int i = 0; i < node.count; i++) {
+                m |= node.children[i].getMask();
+            }
+            if (m == node.getMask()) {
+                return;
+            }
+            node.totals().mask = m;
+            node = node.parentNode;
+        }
+    }
+
+    /**
+     * Forgets number and summary of objects of this node and all nodes above it.
+     */
+    public void invalidateAggregate() {
+        // nodes above invalid node are invalid as well, so walk may stop there
+        RtreeNode node = this;
+        while (node != null && node.totals != null && node.totals.size >= 0) {
+            node.totals.size = -1;
+            node.totals.summary = null;
+            node = node.parentNode;
         }
-        if (!s.equals(this.r)) {
+    }
+
+    /**
+     * Forgets number and summary of objects of every node in subtree of this node.
+     */
+    public void invalidateAggregates() {
+        if (this.totals != null) {
+            this.totals.size = -1;
+            this.totals.summary = null;
+        }
+        for (int i = 0; i < this.count; i++) {
+            this.children[i].invalidateAggregates();
+        }
+    }
+
+    private void setBounds(int x1, int y1, int x2, int y2) {
+        if (!this.bounded || x1 != this.minX || y1 != this.minY || x2 != this.maxX || y2 != this.maxY) {
             if (this.parentNode != null)
                 this.parentNode.setChildnodeChange();
-            this.r = s;
+            this.minX = x1;
+            this.minY = y1;
+            this.maxX = x2;
+            this.maxY = y2;
+            this.bounded = true;
         }
-        this.change = false;
     }
 
     // </editor-fold>
 
     // <editor-fold defaultstate="collapsed" desc="methods for child nodes management">
     public ArrayList<RtreeNode> getChildList() {
-        return (ArrayList<RtreeNode>) this.children.clone();
+        ArrayList<RtreeNode> list = new ArrayList(this.count);
+        for (int i = 0; i < this.count; i++) {
+            list.add(this.children[i]);
+        }
+        return list;
+    }
+
+    /**
+     * Returns child node at given position without copying the list of children.
+     * @param i - index of child node
+     * @return child node
+     */
+    public RtreeNode getChildnode(int i) {
+        if (i >= this.count) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.count);
+        }
+        return this.children[i];
     }
 
     public void replaceChildList(ArrayList<RtreeNode> list) {
         this.clearNode();
-        this.children.clear();
         for (RtreeNode node : list) {
-            this.children.add(node);
+            this.append(node);
             node.setParent(this);
         }
-        this.adjustRectangle();
+        this.calculateRectangle();
     }
 
     public void addChildnode(RtreeNode n) {
-        Rectangle s;
-        if (this.children.contains(n)) {
+        if (this.hasChildnode(n)) {
+            return;
+        }
+        this.insertChildnode(this.count, n);
+    }
+
+    /**
+     * Inserts child node at given position, children behind it are shifted.
+     * @param index - position of new child node
+     * @param n - new child node
+     */
+    public void insertChildnode(int index, RtreeNode n) {
+        if (index < 0 || index > this.count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.count);
+        }
+        this.append(n);
+        System.arraycopy(this.children, index, this.children, index + 1, this.count - 1 - index);
+        this.children[index] = n;
+        n.setParent(this);
+
+        n.adjustRectangle();
+        if (!n.bounded) {
+            // empty node does not enlarge anything
+            this.change = false;
             return;
         }
-        this.children.add(n);
-        if (this.r == null) {
-            s = n.getRectangle();
+        if (!this.bounded) {
+            this.setBounds(n.minX, n.minY, n.maxX, n.maxY);
         }
         else {
-            s = this.r.union(n.getRectangle());
+            this.setBounds(Math.min(this.minX, n.minX), Math.min(this.minY, n.minY),
+                           Math.max(this.maxX, n.maxX), Math.max(this.maxY, n.maxY));
         }
+        this.change = false;
+    }
 
-        n.setParent(this);
-        if (!s.equals(r) && parentNode != null) {
-            this.parentNode.setChildnodeChange();
+    private void append(RtreeNode n) {
+        // one place is kept free for the entery overflowing the node before its split
+        if (this.children == null) {
+            this.children = new RtreeNode[Math.max(this.maxEnteries, MAX_ROOT_ENTERIES) + 1];
+        }
+        else if (this.count == this.children.length) {
+            this.children = Arrays.copyOf(this.children, this.count + (this.count >> 1) + 1);
         }
+        this.children[this.count++] = n;
+        this.invalidateAggregate();
+        this.includeMask(n.getMask());
+    }
 
-        this.r = s;
-        this.change = false;
+    /**
+     * Removes child node without recalculating rectangle of this node. Rectangle is
+     * recalculated later, on the next call of {@code adjustRectangle()}.
+     * @param child - child node to be removed
+     */
+    public void detachChild(RtreeNode child) {
+        for (int i = 0; i < this.count; i++) {
+            if (this.children[i] == child) {
+                System.arraycopy(this.children, i + 1, this.children, i, this.count - i - 1);
+                this.children[--this.count] = null;
+                this.setChildnodeChange();
+                this.invalidateAggregate();
+                this.recalculateMask();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns true if given node is child of this node.
+     * @param child - tested node
+     * @return true if node is child of this node
+     */
+    public boolean hasChildnode(RtreeNode child) {
+        for (int i = 0; i < this.count; i++) {
+            if (this.children[i] == child) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public int getChildnodeCount() {
-        return this.children.size();
+        return this.count;
     }
 
     public void removeChild(RtreeNode child) {
-        this.children.remove(child);
-        this.setChildnodeChange();
+        this.detachChild(child);
         this.adjustRectangle();
     }
 
@@ -235,32 +595,62 @@ public class RtreeNode<T> {
     }
 
     public boolean setContent(T obj, Rectangle r) {
-        this.r = r;
         this.object = obj;
-        if (this.parentNode != null)
-            this.parentNode.setChildnodeChange();
-
+        this.totals = null;
         if (obj instanceof RtreeNodeLinker) {
             ((RtreeNodeLinker) obj).setNode(this);
-            this.r = ((RtreeNodeLinker) obj).getBoundingBox();
+            r = ((RtreeNodeLinker) obj).getBoundingBox();
         }
+        this.setRectangle(r);
         return true;
     }
 
     public boolean setContent(T obj, Point p) {
-        this.r = new Rectangle(p);
-        this.r.grow(1, 1);
         this.object = obj;
-        if (this.parentNode != null)
-            this.parentNode.setChildnodeChange();
-
+        this.totals = null;
         if (obj instanceof RtreeNodeLinker) {
             ((RtreeNodeLinker) obj).setNode(this);
         }
-
+        this.setRectangle(new Rectangle((p.x - 1), (p.y - 1), 2, 2));
         return true;
     }
 
+    /**
+     * Changes rectangle of entery without changing its content. Rectangle of parent
+     * node is recalculated on the next call of its {@code adjustRectangle()}.
+     * Coordinates are copied, later changes of given rectangle do not affect the tree.
+     * @param r - new rectangle of the entery
+     */
+    public void setRectangle(Rectangle r) {
+        this.minX = r.x;
+        this.minY = r.y;
+        this.maxX = r.x + r.width;
+        this.maxY = r.y + r.height;
+        this.bounded = true;
+        if (this.parentNode != null) {
+            this.parentNode.setChildnodeChange();
+            this.parentNode.invalidateAggregate();
+        }
+    }
+
+    /**
+     * Changes categories of entery. Unions of categories of nodes above it are updated
+     * right away, so queries filtering by categories never change the tree.
+     * @param mask - bitmask of categories of the entery
+     */
+    public void setMask(long mask) {
+        // enteries of all categories, the usual case, need no totals at all
+        if (mask == -1L) {
+            this.totals = null;
+        }
+        else {
+            this.totals().mask = mask;
+        }
+        if (this.parentNode != null) {
+            this.parentNode.recalculateMask();
+        }
+    }
+
     public boolean getIsEntery() {
         return (this.object != null);
     }
@@ -282,7 +672,7 @@ public class RtreeNode<T> {
         else {
             s = s.concat("node ");
         }
-        Integer c = this.children.size();
+        Integer c = this.count;
         s = s.concat("with ".concat(c.toString()).concat(" child nodes;"));
 
         return s;
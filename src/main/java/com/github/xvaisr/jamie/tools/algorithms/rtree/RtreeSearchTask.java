@@ -0,0 +1,91 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task collecting objects whose rectangles intersect given rectangle. Subtrees
+ * holding more objects than the threshold are searched by separate subtasks, smaller
+ * ones sequentially. Sizes of subtrees are estimated from their fan-out, so tasks only
+ * read the tree.
+ * @author Roman Vais
+ * @param <T>
+ */
+class RtreeSearchTask<T> extends RecursiveTask<ArrayList<T>> {
+
+    private final RtreeNode node;
+    private final Rectangle r;
+    private final int threshold;
+
+    RtreeSearchTask(RtreeNode node, Rectangle r, int threshold) {
+        this.node = node;
+        this.r = r;
+        this.threshold = threshold;
+    }
+
+    @Override
+    protected ArrayList<T> compute() {
+        ArrayList<T> found = new ArrayList();
+        if (this.node.estimateSize() <= this.threshold) {
+            RtreeSearchTask.Search(this.node, this.r, found);
+            return found;
+        }
+
+        ArrayList<RtreeSearchTask<T>> tasks = new ArrayList();
+        int count = this.node.getChildnodeCount();
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = this.node.getChildnode(i);
+            if (child.intersects(this.r)) {
+                if (child.getIsEntery()) {
+                    found.add((T) child.getContent());
+                }
+                else {
+                    tasks.add(new RtreeSearchTask(child, this.r, this.threshold));
+                }
+            }
+        }
+
+        // last subtree is searched by this thread, others are left to be stolen
+        for (int i = 0; i < tasks.size() - 1; i++) {
+            tasks.get(i).fork();
+        }
+        if (!tasks.isEmpty()) {
+            found.addAll(tasks.get(tasks.size() - 1).compute());
+        }
+        for (int i = tasks.size() - 2; i >= 0; i--) {
+            found.addAll(tasks.get(i).join());
+        }
+        return found;
+    }
+
+    private static void Search(RtreeNode node, Rectangle r, ArrayList found) {
+        int count = node.getChildnodeCount();
+        for (int i = 0; i < count; i++) {
+            RtreeNode child = node.getChildnode(i);
+            if (child.intersects(r)) {
+                if (child.getIsEntery()) {
+                    found.add(child.getContent());
+                }
+                else {
+                    RtreeSearchTask.Search(child, r, found);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import com.github.xvaisr.jamie.engine.geometry.basic.Point;
+import com.github.xvaisr.jamie.engine.geometry.shapes2D.Shape;
+import java.awt.Rectangle;
+import java.util.List;
+
+/**
+ * Convex shape prepared for testing against R-tree nodes. Vertices are copied into
+ * arrays and extent of the shape along normal of every edge is computed once, so
+ * tests of nodes allocate nothing. Shape is closed, rectangle of node is taken as the
+ * set of integer points it covers, from {minX, minY} to {maxX - 1, maxY - 1}, the same
+ * points {@code Find(Point)} would find it by.
+ * @author Roman Vais
+ */
+final class RtreeShape {
+
+    private final int count;
+    private final int[] xs;
+    private final int[] ys;
+    private final long[] low;       // extent of the shape along normal of each edge
+    private final long[] high;
+    private final int orientation;  // sign of area, 0 for degenerate shape
+    private final Rectangle bounds;
+
+    RtreeShape(Shape shape) {
+        List<Point> vertices = shape.getVertices();
+        this.count = vertices.size();
+        this.xs = new int[this.count];
+        this.ys = new int[this.count];
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < this.count; i++) {
+            Point v = vertices.get(i);
+            this.xs[i] = v.x();
+            this.ys[i] = v.y();
+            minX = Math.min(minX, v.x());
+            minY = Math.min(minY, v.y());
+            maxX = Math.max(maxX, v.x());
+            maxY = Math.max(maxY, v.y());
+        }
+        this.bounds = (this.count == 0)? new Rectangle() :
+                new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+
+        long area = 0;
+        this.low = new long[this.count];
+        this.high = new long[this.count];
+        for (int i = 0; i < this.count; i++) {
+            int j = (i + 1 == this.count)? 0 : i + 1;
+            area += (long) this.xs[i] * this.ys[j] - (long) this.xs[j] * this.ys[i];
+
+            long lo = Long.MAX_VALUE, hi = Long.MIN_VALUE;
+            for (int k = 0; k < this.count; k++) {
+                long d = this.project(i, this.xs[k], this.ys[k]);
+                lo = Math.min(lo, d);
+                hi = Math.max(hi, d);
+            }
+            this.low[i] = lo;
+            this.high[i] = hi;
+        }
+        this.orientation = Long.signum(area);
+    }
+
+    /**
+     * Returns bounding box of the shape in the form used by the tree.
+     * @return rectangle covering all points of the shape
+     */
+    Rectangle getBounds() {
+        return this.bounds;
+    }
+
+    /**
+     * Tests whether rectangle of given node shares at least one point with the shape.
+     * Separating axis test, the axes are the coordinate axes and normals of all edges.
+     * @param n - tested node
+     * @return true if node and the shape intersect
+     */
+    boolean intersects(RtreeNode n) {
+        // bounding box of the shape first, it decides most of the nodes
+        if (!n.intersects(this.bounds)) {
+            return false;
+        }
+        int x0 = n.getMinX(), y0 = n.getMinY();
+        int x1 = n.getMaxX() - 1, y1 = n.getMaxY() - 1;
+        for (int i = 0; i < this.count; i++) {
+            long a = this.normalX(i), b = this.normalY(i);
+            if (a == 0 && b == 0) {
+                continue;
+            }
+            long min = a * ((a >= 0)? x0 : x1) + b * ((b >= 0)? y0 : y1);
+            long max = a * ((a >= 0)? x1 : x0) + b * ((b >= 0)? y1 : y0);
+            if (max < this.low[i] || min > this.high[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests whether all points of rectangle of given node lie in the shape. Rectangle
+     * is inside convex shape when all its corners are.
+     * @param n - tested node
+     * @return true if node is contained by the shape
+     */
+    boolean contains(RtreeNode n) {
+        int x0 = n.getMinX(), y0 = n.getMinY();
+        int x1 = n.getMaxX() - 1, y1 = n.getMaxY() - 1;
+        if (this.orientation == 0 || x1 < x0 || y1 < y0) {
+            return false;
+        }
+        return this.contains(x0, y0) && this.contains(x1, y0) &&
+               this.contains(x0, y1) && this.contains(x1, y1);
+    }
+
+    private boolean contains(int x, int y) {
+        for (int i = 0; i < this.count; i++) {
+            int j = (i + 1 == this.count)? 0 : i + 1;
+            long cross = (long) (this.xs[j] - this.xs[i]) * (y - this.ys[i]) -
+                         (long) (this.ys[j] - this.ys[i]) * (x - this.xs[i]);
+            if (Long.signum(cross) == -this.orientation) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long normalX(int i) {
+        int j = (i + 1 == this.count)? 0 : i + 1;
+        return (long) this.ys[j] - this.ys[i];
+    }
+
+    private long normalY(int i) {
+        int j = (i + 1 == this.count)? 0 : i + 1;
+        return (long) this.xs[i] - this.xs[j];
+    }
+
+    private long project(int i, int x, int y) {
+        return this.normalX(i) * x + this.normalY(i) * y;
+    }
+}
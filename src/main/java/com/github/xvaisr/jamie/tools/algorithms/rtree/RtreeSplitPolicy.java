@@ -0,0 +1,39 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import com.github.xvaisr.jamie.tools.structures.Pair;
+
+/**
+ * Algorithm dividing enteries of overflowing R-tree node into two new nodes.
+ * Implementations differ in cost of the split and in quality (overlap and coverage)
+ * of resulting nodes. Cheap splits suit insert-heavy trees, expensive splits pay off
+ * in trees which are mostly queried.
+ * @author Roman Vais
+ * @see LinearSplit
+ * @see QuadraticSplit
+ * @see RstarSplit
+ */
+public interface RtreeSplitPolicy {
+
+    /**
+     * Distributes all enteries of given overflowing node into two new nodes.
+     * Given node is left to be thrown away and replaced by resulting nodes.
+     * @param node - node with M + 1 enteries
+     * @return pair of new nodes, each holding at least m enteries if possible
+     */
+    public Pair<RtreeNode, RtreeNode> split(RtreeNode node);
+}
@@ -0,0 +1,106 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over objects stored in R-tree whose rectangles intersect given rectangle.
+ * Tree is traversed depth first only as far as the consumer asks for objects, so nothing
+ * is collected in advance and search stops as soon as the consumer stops. Splitting hands
+ * over half of subtrees waiting to be traversed, the highest ones first, so parallel
+ * streams divide the tree by whole subtrees. Spliterator must not be used after the tree
+ * has been modified.
+ * @author Roman Vais
+ * @param <T>
+ */
+public class RtreeSpliterator<T> implements Spliterator<T> {
+
+    private final ArrayDeque<RtreeNode> pending;   // nodes and enteries intersecting r
+    private final Rectangle r;
+
+    RtreeSpliterator(RtreeNode root, Rectangle r) {
+        this(new ArrayDeque(), new Rectangle(r));
+        if (root.getChildnodeCount() > 0 && root.intersects(r)) {
+            this.pending.push(root);
+        }
+    }
+
+    private RtreeSpliterator(ArrayDeque<RtreeNode> pending, Rectangle r) {
+        this.pending = pending;
+        this.r = r;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (!this.pending.isEmpty()) {
+            RtreeNode node = this.pending.pop();
+            if (node.getIsEntery()) {
+                action.accept((T) node.getContent());
+                return true;
+            }
+            this.Expand(node);
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        // single node is opened first, so there is something to share
+        while (this.pending.size() == 1 && !this.pending.peek().getIsEntery()) {
+            this.Expand(this.pending.pop());
+        }
+        int half = this.pending.size() / 2;
+        if (half == 0) {
+            return null;
+        }
+
+        // bottom of the stack holds the highest subtrees
+        ArrayDeque<RtreeNode> split = new ArrayDeque();
+        for (int i = 0; i < half; i++) {
+            split.push(this.pending.pollLast());
+        }
+        return new RtreeSpliterator(split, this.r);
+    }
+
+    @Override
+    public long estimateSize() {
+        // subtrees are estimated from their fan-out, counting them would change the tree
+        long size = 0;
+        for (RtreeNode node : this.pending) {
+            size += node.estimateSize();
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.NONNULL;
+    }
+
+    private void Expand(RtreeNode node) {
+        // children are pushed backwards, so they are visited in their order
+        for (int i = node.getChildnodeCount() - 1; i >= 0; i--) {
+            RtreeNode child = node.getChildnode(i);
+            if (child.intersects(this.r)) {
+                this.pending.push(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.tools.algorithms.rtree;
+
+import java.util.ArrayList;
+
+/**
+ * Shape of R-tree at the moment it was taken by {@code Rtree.getStatistics()}. Levels
+ * are numbered from the root (level 0) to the leaves (level height - 1). Overlap is sum
+ * of areas shared by pairs of siblings, dead space is sum of areas of nodes not covered
+ * by their children, counted as node area less total area of the children, so it is
+ * underestimated where children overlap.
+ * @author Roman Vais
+ */
+public final class RtreeStatistics {
+
+    private final int height;
+    private final int size;
+    private final int[] nodes;
+    private final double[] fill;
+    private final long overlap;
+    private final long deadSpace;
+
+    RtreeStatistics(RtreeNode root) {
+        ArrayList<Integer> nodeCount = new ArrayList();
+        ArrayList<Double> fillSum = new ArrayList();
+        long overlapSum = 0;
+        long deadSum = 0;
+        int objects = 0;
+
+        // breadth first, one level at a time
+        ArrayList<RtreeNode> level = new ArrayList();
+        if (root.getChildnodeCount() > 0) {
+            level.add(root);
+        }
+        while (!level.isEmpty()) {
+            ArrayList<RtreeNode> next = new ArrayList();
+            double fillLevel = 0;
+            for (RtreeNode node : level) {
+                int count = node.getChildnodeCount();
+                fillLevel += (double) count / Math.max(1, node.getMaxEnteries());
+                long covered = 0;
+                for (int i = 0; i < count; i++) {
+                    RtreeNode child = node.getChildnode(i);
+                    covered += RtreeStatistics.Area(child);
+                    for (int j = i + 1; j < count; j++) {
+                        overlapSum += RtreeStatistics.Overlap(child, node.getChildnode(j));
+                    }
+                    if (child.getIsEntery()) {
+                        objects++;
+                    }
+                    else {
+                        next.add(child);
+                    }
+                }
+                deadSum += Math.max(0, RtreeStatistics.Area(node) - covered);
+            }
+            nodeCount.add(level.size());
+            fillSum.add(fillLevel);
+            level = next;
+        }
+
+        this.height = nodeCount.size();
+        this.size = objects;
+        this.nodes = new int[this.height];
+        this.fill = new double[this.height];
+        for (int l = 0; l < this.height; l++) {
+            this.nodes[l] = nodeCount.get(l);
+            this.fill[l] = fillSum.get(l) / this.nodes[l];
+        }
+        this.overlap = overlapSum;
+        this.deadSpace = deadSum;
+    }
+
+    /**
+     * Returns number of node levels, leaves included, enteries not.
+     * @return height of the tree
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    public int getNodeCount(int level) {
+        return this.nodes[level];
+    }
+
+    /**
+     * Returns average over nodes on given level of their number of children divided by
+     * maximal number of enteries they may hold.
+     * @param level - level of nodes, 0 is the root
+     * @return fill factor between 0 and 1
+     */
+    public double getFillFactor(int level) {
+        return this.fill[level];
+    }
+
+    public long getOverlap() {
+        return this.overlap;
+    }
+
+    public long getDeadSpace() {
+        return this.deadSpace;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append("height ").append(this.height).append(", objects ").append(this.size);
+        for (int l = 0; l < this.height; l++) {
+            s.append(String.format(", level %d: %d nodes %.0f%% full", l, this.nodes[l], 100 * this.fill[l]));
+        }
+        s.append(", overlap ").append(this.overlap).append(", dead space ").append(this.deadSpace);
+        return s.toString();
+    }
+
+    private static long Area(RtreeNode n) {
+        return (long) (n.getMaxX() - n.getMinX()) * (n.getMaxY() - n.getMinY());
+    }
+
+    private static long Overlap(RtreeNode a, RtreeNode b) {
+        long w = (long) Math.min(a.getMaxX(), b.getMaxX()) - Math.max(a.getMinX(), b.getMinX());
+        long h = (long) Math.min(a.getMaxY(), b.getMaxY()) - Math.max(a.getMinY(), b.getMinY());
+        return (w > 0 && h > 0)? w * h : 0;
+    }
+}
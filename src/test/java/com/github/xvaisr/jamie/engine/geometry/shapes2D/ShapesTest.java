@@ -0,0 +1,66 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.xvaisr.jamie.engine.geometry.shapes2D;
+
+import com.github.xvaisr.jamie.engine.geometry.basic.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Roman Vais
+ */
+public class ShapesTest {
+
+    @Test
+    public void boundingBoxSortKeyTest() throws Exception {
+        Triangle t = new Triangle(new Point(10, 20), new Point(40, 5), new Point(25, 50));
+        Rectangle box = t.getBoundingBox();
+        Assert.assertEquals(new Point(10, 5), box.getBottomLeftCorner());
+
+        // points are sorted by x again once bounding box is done
+        ArrayList<Point> points = new ArrayList();
+        points.add(new Point(5, 0));
+        points.add(new Point(1, 9));
+        Collections.sort(points);
+        Assert.assertEquals(1, points.get(0).x());
+    }
+
+    @Test
+    public void triangleCentroidTest() throws Exception {
+        Triangle t = new Triangle(new Point(100, 100), new Point(130, 100), new Point(100, 130));
+        Assert.assertTrue(t.contains(new Point(105, 105)));
+        Assert.assertFalse(t.contains(new Point(125, 125)));
+    }
+
+    @Test
+    public void intersectsAllEdgesTest() throws Exception {
+        // first edge of either triangle crosses nothing
+        Triangle a = new Triangle(new Point(0, 0), new Point(10, 0), new Point(0, 10));
+        Triangle b = new Triangle(new Point(20, 20), new Point(20, 10), new Point(2, 6));
+        Assert.assertTrue(a.intersects(b));
+        Assert.assertTrue(b.intersects(a));
+    }
+
+    @Test
+    public void rectangleContainsTest() throws Exception {
+        Rectangle r = new Rectangle(new Point(0, 0), new Point(10, 10));
+        Assert.assertTrue(r.contains(new Rectangle(new Point(2, 2), new Point(8, 8))));
+        Assert.assertFalse(r.contains(new Rectangle(new Point(2, 2), new Point(20, 20))));
+    }
+}
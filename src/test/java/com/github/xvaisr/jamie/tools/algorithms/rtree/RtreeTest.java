@@ -15,6 +15,31 @@
 
 package com.github.xvaisr.jamie.tools.algorithms.rtree;
 
+import com.github.xvaisr.jamie.engine.geometry.shapes2D.LineSegment;
+import com.github.xvaisr.jamie.engine.geometry.shapes2D.Polygon;
+import com.github.xvaisr.jamie.engine.geometry.shapes2D.Shape;
+import com.github.xvaisr.jamie.engine.geometry.shapes2D.Triangle;
+import com.github.xvaisr.jamie.engine.geometry.shapes3D.Cube;
+import com.github.xvaisr.jamie.tools.structures.Pair;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -29,4 +54,1217 @@ public class RtreeTest {
         Assert.assertTrue(true);
     }
 
+    @Test
+    public void InsertFindTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(2000, 1);
+        Rtree<Integer> tree = new Rtree(2, 8);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+        RtreeTest.assertQueries(tree, data, 2);
+    }
+
+    @Test
+    public void BulkLoadTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(5000, 3);
+        Rtree<Integer> tree = new Rtree(4, 16);
+        tree.Load(data);
+        RtreeTest.assertQueries(tree, data, 4);
+
+        // tree built by loading stays usable for ordinary insertion
+        ArrayList<Pair<Integer, Rectangle>> more = RtreeTest.randomData(500, 5);
+        for (Pair<Integer, Rectangle> p : more) {
+            Integer i = p.getA() + data.size();
+            tree.Insert(i, p.getB());
+            data.add(new Pair(i, p.getB()));
+        }
+        RtreeTest.assertQueries(tree, data, 6);
+    }
+
+    @Test
+    public void RstarInsertDeleteTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(3000, 7);
+        Rtree<Integer> tree = new Rtree(3, 10, Rtree.Mode.RSTAR);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+        RtreeTest.assertQueries(tree, data, 8);
+
+        ArrayList<Pair<Integer, Rectangle>> kept = new ArrayList();
+        for (Pair<Integer, Rectangle> p : data) {
+            if (p.getA() % 3 == 0) {
+                tree.Delete(p.getA(), p.getB());
+            }
+            else {
+                kept.add(p);
+            }
+        }
+        RtreeTest.assertQueries(tree, kept, 9);
+    }
+
+    @Test
+    public void SplitPolicyTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(2000, 11);
+        RtreeSplitPolicy[] policies = {new LinearSplit(), new QuadraticSplit(), new RstarSplit()};
+        for (RtreeSplitPolicy policy : policies) {
+            Rtree<Integer> tree = new Rtree(4, 12, policy);
+            for (Pair<Integer, Rectangle> p : data) {
+                tree.Insert(p.getA(), p.getB());
+            }
+            RtreeTest.assertQueries(tree, data, 12);
+        }
+    }
+
+    @Test
+    public void NearestTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(3000, 13);
+        Rtree<Integer> tree = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+
+        Random random = new Random(14);
+        for (int q = 0; q < 50; q++) {
+            Point p = new Point(random.nextInt(10000), random.nextInt(10000));
+            ArrayList<Integer> found = tree.Nearest(p, 10);
+            Assert.assertEquals(10, found.size());
+
+            // distances are not decreasing and no other object is closer than the last one
+            double last = 0;
+            for (Integer i : found) {
+                double d = Math.sqrt(RtreeNearestIterator.MinDistance(p, data.get(i).getB()));
+                Assert.assertTrue(d >= last);
+                last = d;
+            }
+            int closer = 0;
+            for (Pair<Integer, Rectangle> e : data) {
+                if (Math.sqrt(RtreeNearestIterator.MinDistance(p, e.getB())) < last) {
+                    closer++;
+                }
+            }
+            Assert.assertTrue(closer <= 10);
+
+            for (Integer i : tree.Nearest(p, 100, 200)) {
+                Assert.assertTrue(RtreeNearestIterator.MinDistance(p, data.get(i).getB()) <= 200 * 200);
+            }
+        }
+    }
+
+    @Test
+    public void VisitorTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(1000, 15);
+        Rtree<Integer> tree = new Rtree(4, 16);
+        tree.Load(data);
+
+        final ArrayList<Integer> visited = new ArrayList();
+        Rectangle all = new Rectangle(0, 0, 20000, 20000);
+        Assert.assertTrue(tree.Find(all, new RtreeVisitor<Integer>() {
+            @Override
+            public boolean visit(Integer object) {
+                return visited.add(object);
+            }
+        }));
+        Assert.assertEquals(data.size(), visited.size());
+
+        visited.clear();
+        Assert.assertFalse(tree.Find(all, new RtreeVisitor<Integer>() {
+            @Override
+            public boolean visit(Integer object) {
+                visited.add(object);
+                return visited.size() < 5;
+            }
+        }));
+        Assert.assertEquals(5, visited.size());
+    }
+
+    @Test
+    public void FreezeTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(3000, 17);
+        Rtree<Integer> tree = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+        PackedRtree<Integer> packed = tree.Freeze();
+        Assert.assertEquals(data.size(), packed.size());
+
+        Random random = new Random(18);
+        for (int q = 0; q < 100; q++) {
+            Rectangle w = new Rectangle(random.nextInt(10000), random.nextInt(10000),
+                                        1 + random.nextInt(800), 1 + random.nextInt(800));
+            Assert.assertEquals(new HashSet(tree.Find(w)), new HashSet(packed.Find(w)));
+
+            Point p = new Point(random.nextInt(10000), random.nextInt(10000));
+            Assert.assertEquals(new HashSet(tree.Find(p)), new HashSet(packed.Find(p)));
+        }
+    }
+
+    @Test
+    public void ConcurrentReadTest() throws Exception {
+        final ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(2000, 19);
+        final ConcurrentRtree<Integer> tree = new ConcurrentRtree();
+        final Rectangle all = new Rectangle(0, 0, 20000, 20000);
+
+        Thread[] readers = new Thread[4];
+        final boolean[] failed = new boolean[1];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int q = 0; q < 200; q++) {
+                        PackedRtree<Integer> s = tree.getSnapshot();
+                        if (s.Find(all).size() != s.size()) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            });
+            readers[t].start();
+        }
+
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+            if (p.getA() % 100 == 0) {
+                tree.Publish();
+            }
+        }
+        for (Thread t : readers) {
+            t.join();
+        }
+
+        Assert.assertFalse(failed[0]);
+        long version = tree.Publish();
+        Assert.assertEquals(data.size(), tree.Find(all).size());
+
+        // deleting what is not there publishes nothing new
+        Assert.assertFalse(tree.Delete(-1));
+        Assert.assertFalse(tree.Delete(-1, all));
+        Assert.assertEquals(version, tree.Publish());
+        Assert.assertTrue(tree.Delete(data.get(0).getA()));
+        Assert.assertEquals(version + 1, tree.Publish());
+        Assert.assertEquals(version + 1, tree.getVersion());
+        Assert.assertEquals(data.size() - 1, tree.getSnapshot().size());
+
+        // the whole writer side of Rtree, categories included, reaches readers
+        Rectangle corner = new Rectangle(-1000, -1000, 500, 500);
+        Integer red = -10, blue = -11, green = -12;
+        tree.Insert(red, new Rectangle(-900, -900, 10, 10), 1L);
+        tree.Insert(blue, new Point(-800, -800), 2L);
+        RtreeBatch<Integer> batch = new RtreeBatch();
+        batch.Insert(green, new Rectangle(-700, -700, 10, 10), 4L);
+        tree.Apply(batch);
+        Assert.assertTrue(tree.Find(corner).isEmpty());
+        Assert.assertEquals(version + 2, tree.Publish());
+        Assert.assertEquals(3, tree.Find(corner).size());
+        Assert.assertEquals(Collections.singletonList(red), tree.Find(corner, 1L));
+        Assert.assertEquals(2, tree.Find(corner, 6L).size());
+        Assert.assertEquals(data.size() - 1, tree.Find(all, 1L).size());
+
+        Assert.assertTrue(tree.setMask(red, 2L));
+        Assert.assertFalse(tree.setMask(-99, 2L));
+        tree.Publish();
+        Assert.assertEquals(new HashSet(Arrays.asList(red, blue)), new HashSet(tree.Find(corner, 2L)));
+        Assert.assertEquals(3, tree.DeleteAll(corner, Rtree.Relation.INTERSECTS).size());
+        Assert.assertTrue(tree.DeleteAll(corner, Rtree.Relation.INTERSECTS).isEmpty());
+        Assert.assertEquals(version + 4, tree.Publish());
+        Assert.assertTrue(tree.Find(corner).isEmpty());
+
+        tree.Load(Arrays.asList(new Pair(red, new Rectangle(-900, -900, 10, 10))), new long[] {8L});
+        tree.Publish();
+        Assert.assertEquals(Collections.singletonList(red), tree.Find(all.union(corner), 8L));
+        Assert.assertTrue(tree.Find(all.union(corner), 1L).isEmpty());
+    }
+
+    @Test
+    public void BatchTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(3000, 21);
+        Rtree<Integer> tree = new Rtree(3, 10, Rtree.Mode.RSTAR);
+        RtreeBatch<Integer> batch = new RtreeBatch();
+        for (Pair<Integer, Rectangle> p : data.subList(0, 2000)) {
+            batch.Insert(p.getA(), p.getB());
+        }
+        tree.Apply(batch);
+        RtreeTest.assertQueries(tree, new ArrayList(data.subList(0, 2000)), 22);
+
+        batch.clear();
+        ArrayList<Pair<Integer, Rectangle>> kept = new ArrayList();
+        for (Pair<Integer, Rectangle> p : data) {
+            if (p.getA() >= 2000) {
+                batch.Insert(p.getA(), p.getB());
+                kept.add(p);
+            }
+            else if (p.getA() % 2 == 0) {
+                batch.Delete(p.getA(), p.getB());
+            }
+            else {
+                kept.add(p);
+            }
+        }
+        tree.Apply(batch);
+        RtreeTest.assertQueries(tree, kept, 23);
+
+        batch.clear();
+        for (Pair<Integer, Rectangle> p : kept.subList(5, kept.size())) {
+            batch.Delete(p.getA(), p.getB());
+        }
+        tree.Apply(batch);
+        RtreeTest.assertQueries(tree, new ArrayList(kept.subList(0, 5)), 24);
+
+        // batch keeps its own copies, reusing one rectangle for everything is fine
+        batch.clear();
+        Rectangle shared = new Rectangle();
+        for (Pair<Integer, Rectangle> p : kept.subList(0, 5)) {
+            shared.setBounds(p.getB());
+            batch.Delete(p.getA(), shared);
+        }
+        for (Pair<Integer, Rectangle> p : data.subList(0, 5)) {
+            shared.setBounds(p.getB());
+            batch.Insert(p.getA(), shared);
+        }
+        shared.setBounds(0, 0, 0, 0);
+        tree.Apply(batch);
+        RtreeTest.assertQueries(tree, new ArrayList(data.subList(0, 5)), 25);
+    }
+
+    @Test
+    public void DeleteWithoutBoundsTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(3000, 27);
+        Rtree<Integer> tree = new Rtree(3, 10, Rtree.Mode.RSTAR);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+
+        ArrayList<Pair<Integer, Rectangle>> kept = new ArrayList();
+        for (Pair<Integer, Rectangle> p : data) {
+            if (p.getA() % 4 == 0) {
+                tree.Delete(p.getA());
+            }
+            else if (p.getA() % 4 == 1) {
+                // stale bounds, object has to be found anyway
+                tree.Delete(p.getA(), new Rectangle(-100, -100, 10, 10));
+            }
+            else {
+                kept.add(p);
+            }
+        }
+        RtreeTest.assertQueries(tree, kept, 28);
+        Assert.assertEquals(kept.size(), tree.Find(new Rectangle(0, 0, 20000, 20000)).size());
+
+        // every copy of object inserted more than once stays reachable
+        Integer twice = 100000;
+        Rectangle first = new Rectangle(-500, -500, 10, 10);
+        Rectangle second = new Rectangle(-300, -300, 10, 10);
+        tree.Insert(twice, first);
+        tree.Insert(twice, second);
+        Assert.assertTrue(tree.Delete(twice, second));
+        Assert.assertEquals(1, tree.Find(first).size());
+        Assert.assertTrue(tree.setMask(twice, 4L));
+        Assert.assertEquals(1, tree.Find(first, 4L).size());
+        Assert.assertTrue(tree.Update(twice, second));
+        Assert.assertTrue(tree.Find(first).isEmpty());
+        Assert.assertEquals(1, tree.Find(second).size());
+        tree.Insert(twice, first);
+        Assert.assertTrue(tree.Delete(twice));
+        Assert.assertTrue(tree.Delete(twice));
+        Assert.assertFalse(tree.Delete(twice));
+        Assert.assertFalse(tree.setMask(twice, 4L));
+        Assert.assertEquals(kept.size(), tree.Find(new Rectangle(-1000, -1000, 21000, 21000)).size());
+    }
+
+    @Test
+    public void MappedTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(5000, 29);
+        Rtree<Integer> tree = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+
+        File file = File.createTempFile("rtree", ".idx");
+        file.deleteOnExit();
+        tree.StoreMapped(file, new RtreeIdentifier<Integer>() {
+            @Override
+            public long identify(Integer object) {
+                return object;
+            }
+        });
+        MappedRtree mapped = MappedRtree.Open(file);
+        Assert.assertEquals(data.size(), mapped.size());
+
+        Random random = new Random(30);
+        for (int q = 0; q < 200; q++) {
+            Rectangle w = new Rectangle(random.nextInt(10000), random.nextInt(10000),
+                                        1 + random.nextInt(800), 1 + random.nextInt(800));
+            HashSet<Long> expected = new HashSet();
+            for (Integer i : tree.Find(w)) {
+                expected.add(i.longValue());
+            }
+            Assert.assertEquals(expected, new HashSet(mapped.Find(w)));
+        }
+
+        // damaged header is refused before anything is mapped
+        int[][] damages = {{0, 0x12345678}, {8, 0}, {8, 16}, {12, 0}, {12, -3}};
+        for (int[] damage : damages) {
+            RandomAccessFile raw = new RandomAccessFile(file, "rw");
+            int original;
+            try {
+                raw.seek(damage[0]);
+                original = raw.readInt();
+                raw.seek(damage[0]);
+                raw.writeInt(damage[1]);
+            }
+            finally {
+                raw.close();
+            }
+            try {
+                MappedRtree.Open(file);
+                Assert.fail("Damaged header at " + damage[0] + " was accepted.");
+            }
+            catch (IOException e) {
+                // expected
+            }
+            raw = new RandomAccessFile(file, "rw");
+            try {
+                raw.seek(damage[0]);
+                raw.writeInt(original);
+            }
+            finally {
+                raw.close();
+            }
+        }
+        Assert.assertEquals(data.size(), MappedRtree.Open(file).size());
+
+        // damaged pages are refused when the search reaches them
+        long[][] pages = {{32, 4, 1000}, {32, 4, -1}, {56, 8, 0}, {56, 8, 1L << 40}};
+        for (long[] damage : pages) {
+            RandomAccessFile raw = new RandomAccessFile(file, "rw");
+            long original;
+            try {
+                raw.seek(damage[0]);
+                original = (damage[1] == 4)? raw.readInt() : raw.readLong();
+                raw.seek(damage[0]);
+                if (damage[1] == 4) {
+                    raw.writeInt((int) damage[2]);
+                }
+                else {
+                    raw.writeLong(damage[2]);
+                }
+            }
+            finally {
+                raw.close();
+            }
+            try {
+                MappedRtree.Open(file).Find(new Rectangle(0, 0, 20000, 20000));
+                Assert.fail("Damaged page at " + damage[0] + " was accepted.");
+            }
+            catch (IllegalStateException e) {
+                // expected
+            }
+            raw = new RandomAccessFile(file, "rw");
+            try {
+                raw.seek(damage[0]);
+                if (damage[1] == 4) {
+                    raw.writeInt((int) original);
+                }
+                else {
+                    raw.writeLong(original);
+                }
+            }
+            finally {
+                raw.close();
+            }
+        }
+        Assert.assertEquals(data.size(), MappedRtree.Open(file).Find(new Rectangle(0, 0, 20000, 20000)).size());
+    }
+
+    @Test
+    public void WriteReadTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(3000, 31);
+        Rtree<Integer> tree = new Rtree(3, 10, Rtree.Mode.RSTAR);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+
+        RtreeCodec<Integer> codec = new RtreeCodec<Integer>() {
+            @Override
+            public void write(Integer object, DataOutput out) throws IOException {
+                out.writeInt(object);
+            }
+
+            @Override
+            public Integer read(DataInput in) throws IOException {
+                return in.readInt();
+            }
+        };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tree.Write(new DataOutputStream(bytes), codec);
+
+        Rtree<Integer> restored = new Rtree(Rtree.Mode.RSTAR);
+        restored.Read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), codec);
+        RtreeTest.assertQueries(restored, data, 32);
+
+        // restored tree keeps working as any other tree
+        ArrayList<Pair<Integer, Rectangle>> more = RtreeTest.randomData(500, 33);
+        for (Pair<Integer, Rectangle> p : more) {
+            Integer i = p.getA() + data.size();
+            restored.Insert(i, p.getB());
+            data.add(new Pair(i, p.getB()));
+        }
+        RtreeTest.assertQueries(restored, data, 34);
+    }
+
+    @Test
+    public void JoinTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> units = RtreeTest.randomData(3000, 35);
+        ArrayList<Pair<Integer, Rectangle>> zones = RtreeTest.randomData(40, 36);
+        Rtree<Integer> a = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        Rtree<Integer> b = new Rtree(2, 6);
+        for (Pair<Integer, Rectangle> p : units) {
+            a.Insert(p.getA(), p.getB());
+        }
+        for (Pair<Integer, Rectangle> p : zones) {
+            p.getB().grow(200, 200);
+            b.Insert(p.getA(), p.getB());
+        }
+
+        HashSet<String> expected = new HashSet();
+        for (Pair<Integer, Rectangle> u : units) {
+            for (Pair<Integer, Rectangle> z : zones) {
+                if (u.getB().intersects(z.getB())) {
+                    expected.add(u.getA() + ":" + z.getA());
+                }
+            }
+        }
+
+        HashSet<String> found = new HashSet();
+        for (Pair<Integer, Integer> p : a.Join(b)) {
+            found.add(p.getA() + ":" + p.getB());
+        }
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, found);
+    }
+
+    @Test
+    public void AggregateTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(4000, 37);
+        Rtree<Integer> tree = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        tree.setAggregator(new RtreeAggregator<Integer, Long>() {
+            @Override
+            public Long summarize(Integer object) {
+                return object.longValue();
+            }
+
+            @Override
+            public Long combine(Long a, Long b) {
+                return a + b;
+            }
+        });
+
+        ArrayList<Pair<Integer, Rectangle>> kept = new ArrayList();
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+            kept.add(p);
+        }
+        Random random = new Random(38);
+        for (int round = 0; round < 3; round++) {
+            for (int q = 0; q < 100; q++) {
+                Rectangle w = new Rectangle(random.nextInt(10000), random.nextInt(10000),
+                                            1 + random.nextInt(3000), 1 + random.nextInt(3000));
+                int count = 0;
+                long sum = 0;
+                for (Pair<Integer, Rectangle> p : kept) {
+                    if (w.intersects(p.getB())) {
+                        count++;
+                        sum += p.getA();
+                    }
+                }
+                Assert.assertEquals(count, tree.Count(w));
+                Long aggregate = tree.Aggregate(w);
+                Assert.assertEquals(sum, (aggregate == null)? 0 : aggregate.longValue());
+            }
+
+            // change the tree between rounds, stored aggregates must follow
+            ArrayList<Pair<Integer, Rectangle>> next = new ArrayList();
+            for (Pair<Integer, Rectangle> p : kept) {
+                if (random.nextInt(4) == 0) {
+                    tree.Delete(p.getA());
+                }
+                else {
+                    next.add(p);
+                }
+            }
+            kept = next;
+        }
+    }
+
+    @Test
+    public void StreamTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(5000, 39);
+        Rtree<Integer> tree = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+        // lazy queries only read the tree, they never aggregate it
+        final int[] summarized = new int[1];
+        tree.setAggregator(new RtreeAggregator<Integer, Integer>() {
+            @Override
+            public Integer summarize(Integer object) {
+                summarized[0]++;
+                return object;
+            }
+
+            @Override
+            public Integer combine(Integer a, Integer b) {
+                return a + b;
+            }
+        });
+
+        Random random = new Random(40);
+        for (int q = 0; q < 50; q++) {
+            Rectangle w = new Rectangle(random.nextInt(10000), random.nextInt(10000),
+                                        1 + random.nextInt(4000), 1 + random.nextInt(4000));
+            HashSet<Integer> expected = new HashSet(tree.Find(w));
+            Assert.assertEquals(expected, tree.Stream(w, false).collect(Collectors.toSet()));
+            Assert.assertEquals(expected, tree.Stream(w, true).collect(Collectors.toSet()));
+            Assert.assertEquals(expected.size(), tree.Stream(w, true).count());
+
+            Iterator<Integer> i = tree.Iterate(w);
+            if (expected.isEmpty()) {
+                Assert.assertFalse(i.hasNext());
+            }
+            else {
+                Assert.assertTrue(expected.contains(i.next()));
+            }
+        }
+        Assert.assertEquals(0, summarized[0]);
+    }
+
+    @Test
+    public void FindParallelTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(20000, 41);
+        Rtree<Integer> tree = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        tree.setParallelThreshold(256);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+        final int[] summarized = new int[1];
+        tree.setAggregator(new RtreeAggregator<Integer, Integer>() {
+            @Override
+            public Integer summarize(Integer object) {
+                summarized[0]++;
+                return object;
+            }
+
+            @Override
+            public Integer combine(Integer a, Integer b) {
+                return a + b;
+            }
+        });
+
+        Random random = new Random(42);
+        for (int q = 0; q < 20; q++) {
+            Rectangle w = new Rectangle(random.nextInt(5000), random.nextInt(5000),
+                                        1 + random.nextInt(8000), 1 + random.nextInt(8000));
+            ArrayList<Integer> found = tree.FindParallel(w);
+            Assert.assertEquals(new HashSet(tree.Find(w)), new HashSet(found));
+            Assert.assertEquals(tree.Find(w).size(), found.size());
+        }
+        Assert.assertEquals(0, summarized[0]);
+    }
+
+    @Test
+    public void HilbertTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(5000, 43);
+        HilbertRtree<Integer> tree = new HilbertRtree(4, 16);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+
+        ArrayList<Pair<Integer, Rectangle>> kept = new ArrayList();
+        for (Pair<Integer, Rectangle> p : data) {
+            if (p.getA() % 3 == 0) {
+                tree.Delete(p.getA(), p.getB());
+            }
+            else {
+                kept.add(p);
+            }
+        }
+
+        Random random = new Random(44);
+        PackedRtree<Integer> packed = tree.Freeze();
+        Assert.assertEquals(kept.size(), packed.size());
+        for (int q = 0; q < 100; q++) {
+            Rectangle w = new Rectangle(random.nextInt(10000), random.nextInt(10000),
+                                        1 + random.nextInt(800), 1 + random.nextInt(800));
+            HashSet<Integer> expected = new HashSet();
+            for (Pair<Integer, Rectangle> p : kept) {
+                if (w.intersects(p.getB())) {
+                    expected.add(p.getA());
+                }
+            }
+            Assert.assertEquals(expected, new HashSet(tree.Find(w)));
+            Assert.assertEquals(expected, new HashSet(packed.Find(w)));
+        }
+
+        for (Pair<Integer, Rectangle> p : kept) {
+            tree.Delete(p.getA(), p.getB());
+        }
+        Assert.assertTrue(tree.Find(new Rectangle(0, 0, 20000, 20000)).isEmpty());
+    }
+
+    @Test
+    public void Rtree3DTest() throws Exception {
+        Random random = new Random(45);
+        ArrayList<Pair<Integer, Cube>> data = new ArrayList();
+        for (int i = 0; i < 3000; i++) {
+            com.github.xvaisr.jamie.engine.geometry.basic.Point p =
+                new com.github.xvaisr.jamie.engine.geometry.basic.Point(
+                    random.nextInt(1000), random.nextInt(1000), random.nextInt(1000));
+            data.add(new Pair(i, new Cube(p, 1 + random.nextInt(20), 1 + random.nextInt(20), 1 + random.nextInt(20))));
+        }
+
+        Rtree3D<Integer> tree = new Rtree3D(3, 8);
+        for (Pair<Integer, Cube> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+        ArrayList<Pair<Integer, Cube>> kept = new ArrayList();
+        for (Pair<Integer, Cube> p : data) {
+            if (p.getA() % 3 == 0) {
+                tree.Delete(p.getA(), p.getB());
+            }
+            else {
+                kept.add(p);
+            }
+        }
+        Assert.assertEquals(kept.size(), tree.size());
+
+        for (int q = 0; q < 100; q++) {
+            com.github.xvaisr.jamie.engine.geometry.basic.Point p =
+                new com.github.xvaisr.jamie.engine.geometry.basic.Point(
+                    random.nextInt(1000), random.nextInt(1000), random.nextInt(1000));
+            Cube w = new Cube(p, 1 + random.nextInt(200), 1 + random.nextInt(200), 1 + random.nextInt(200));
+            HashSet<Integer> expected = new HashSet();
+            for (Pair<Integer, Cube> c : kept) {
+                if (w.intersects(c.getB())) {
+                    expected.add(c.getA());
+                }
+            }
+            Assert.assertEquals(expected, new HashSet(tree.Find(w)));
+
+            // nearest object has the least distance of all
+            ArrayList<Integer> nearest = tree.Nearest(p, 1);
+            long best = Long.MAX_VALUE;
+            long found = -1;
+            for (Pair<Integer, Cube> c : kept) {
+                long d = RtreeTest.Distance(p, c.getB());
+                best = Math.min(best, d);
+                if (c.getA().equals(nearest.get(0))) {
+                    found = d;
+                }
+            }
+            Assert.assertEquals(best, found);
+        }
+    }
+
+    static long Distance(com.github.xvaisr.jamie.engine.geometry.basic.Point p, Cube c) {
+        long dx = Math.max(0, Math.max(c.getBottomLeftNear().x() - p.x(), p.x() - c.getTopRightFar().x()));
+        long dy = Math.max(0, Math.max(c.getBottomLeftNear().y() - p.y(), p.y() - c.getTopRightFar().y()));
+        long dz = Math.max(0, Math.max(c.getBottomLeftNear().z() - p.z(), p.z() - c.getTopRightFar().z()));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    @Test
+    public void MetricsTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(3000, 47);
+        Rtree<Integer> tree = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        RtreeMetrics metrics = new RtreeMetrics();
+        tree.setMetrics(metrics);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+        for (int i = 0; i < 100; i++) {
+            tree.Find(new Rectangle(i * 100, i * 100, 300, 300));
+        }
+        for (Pair<Integer, Rectangle> p : data.subList(0, 1000)) {
+            tree.Delete(p.getA());
+        }
+
+        Assert.assertEquals(3000, metrics.getInserts());
+        Assert.assertEquals(1000, metrics.getDeletes());
+        Assert.assertEquals(100, metrics.getQueries());
+        Assert.assertTrue(metrics.getSplits() > 0);
+        Assert.assertTrue(metrics.getReinserts() > 0);
+        Assert.assertTrue(metrics.getNodesVisited() >= metrics.getQueries());
+        Assert.assertTrue(metrics.getEnteriesTested() > 0);
+
+        RtreeStatistics stats = tree.getStatistics();
+        Assert.assertEquals(2000, stats.getSize());
+        Assert.assertEquals(1, stats.getNodeCount(0));
+        int leaves = stats.getHeight() - 1;
+        Assert.assertTrue(stats.getFillFactor(leaves) >= 0.25 && stats.getFillFactor(leaves) <= 1);
+        Assert.assertTrue(stats.getNodeCount(leaves) >= 2000 / 16);
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getInserts());
+    }
+
+    @Test
+    public void ShapeQueryTest() throws Exception {
+        Random random = new Random(53);
+        Rtree<Integer> tree = new Rtree(4, 8);
+        ArrayList<Rectangle> bounds = new ArrayList();
+        for (int i = 0; i < 2000; i++) {
+            Rectangle r = new Rectangle(random.nextInt(400), random.nextInt(400), 1 + random.nextInt(10), 1 + random.nextInt(10));
+            bounds.add(r);
+            tree.Insert(i, r);
+        }
+        tree.Insert(-1, new Point(100, 100));
+
+        ArrayList<Shape> shapes = new ArrayList();
+        for (int i = 0; i < 30; i++) {
+            int x = random.nextInt(300), y = random.nextInt(300), w = 1 + random.nextInt(150);
+            shapes.add(new Triangle(P(x, y), P(x + w, y), P(x + random.nextInt(w), y + w)));
+            shapes.add(new com.github.xvaisr.jamie.engine.geometry.shapes2D.Rectangle(P(x, y), P(x + w, y + random.nextInt(w))));
+            ArrayList<com.github.xvaisr.jamie.engine.geometry.basic.Point> diamond = new ArrayList();
+            diamond.add(P(x + w, y));
+            diamond.add(P(x + 2 * w, y + w));
+            diamond.add(P(x + w, y + 2 * w));
+            diamond.add(P(x, y + w));
+            shapes.add(new Polygon(P(x + w, y + w), diamond));
+        }
+
+        for (Shape s : shapes) {
+            HashSet<Integer> expected = new HashSet();
+            for (int i = 0; i < bounds.size(); i++) {
+                if (RtreeTest.Covers(s, bounds.get(i))) {
+                    expected.add(i);
+                }
+            }
+            if (RtreeTest.Covers(s, new Rectangle(100, 100, 1, 1))) {
+                expected.add(-1);
+            }
+            ArrayList<Integer> found = tree.Find(s);
+            Assert.assertEquals(found.size(), new HashSet(found).size());
+            Assert.assertEquals(expected, new HashSet(found));
+        }
+
+        // point shape finds the same objects as point query
+        Triangle dot = new Triangle(P(100, 100), P(100, 100), P(100, 100));
+        Assert.assertEquals(new HashSet(tree.Find(new Point(100, 100))), new HashSet(tree.Find(dot)));
+
+        // empty enteries are not found even in subtrees taken whole
+        Rtree<Integer> covered = new Rtree(4, 8);
+        for (int i = 0; i < 300; i++) {
+            covered.Insert(i, new Rectangle(1000 + random.nextInt(100), 1000 + random.nextInt(100), 1 + random.nextInt(5), 1 + random.nextInt(5)));
+        }
+        covered.Insert(-1, new Rectangle(1050, 1050, 0, 5));
+        covered.Insert(-2, new Rectangle(1060, 1020, 5, 0));
+        RtreeMetrics metrics = new RtreeMetrics();
+        covered.setMetrics(metrics);
+        Triangle all = new Triangle(P(0, 0), P(4000, 0), P(0, 4000));
+        HashSet<Integer> found = new HashSet(covered.Find(all));
+        Assert.assertEquals(0, metrics.getEnteriesTested());
+        Assert.assertEquals(300, found.size());
+        Assert.assertFalse(found.contains(-1) || found.contains(-2));
+        Assert.assertEquals(new HashSet(covered.Find(new Rectangle(900, 900, 300, 300))), found);
+    }
+
+    private static com.github.xvaisr.jamie.engine.geometry.basic.Point P(int x, int y) {
+        return new com.github.xvaisr.jamie.engine.geometry.basic.Point(x, y);
+    }
+
+    /**
+     * Brute force, tests every integer point of the rectangle against every edge of
+     * convex shape.
+     */
+    private static boolean Covers(Shape s, Rectangle r) {
+        List<com.github.xvaisr.jamie.engine.geometry.basic.Point> v = s.getVertices();
+        long area = 0;
+        for (int i = 0; i < v.size(); i++) {
+            com.github.xvaisr.jamie.engine.geometry.basic.Point a = v.get(i), b = v.get((i + 1) % v.size());
+            area += (long) a.x() * b.y() - (long) b.x() * a.y();
+        }
+        for (int x = r.x; x < r.x + r.width; x++) {
+            for (int y = r.y; y < r.y + r.height; y++) {
+                boolean in = true;
+                for (int i = 0; in && i < v.size(); i++) {
+                    com.github.xvaisr.jamie.engine.geometry.basic.Point a = v.get(i), b = v.get((i + 1) % v.size());
+                    long cross = (long) (b.x() - a.x()) * (y - a.y()) - (long) (b.y() - a.y()) * (x - a.x());
+                    in = (area >= 0)? cross >= 0 : cross <= 0;
+                    if (area == 0 && cross == 0) {
+                        in = Math.min(a.x(), b.x()) <= x && x <= Math.max(a.x(), b.x()) &&
+                             Math.min(a.y(), b.y()) <= y && y <= Math.max(a.y(), b.y());
+                    }
+                }
+                if (in) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void CastTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(3000, 59);
+        Rtree<Integer> tree = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+
+        Random random = new Random(61);
+        for (int q = 0; q < 100; q++) {
+            int x0 = random.nextInt(10000), y0 = random.nextInt(10000);
+            int x1 = (q % 10 == 0)? x0 : random.nextInt(10000);
+            int y1 = (q % 10 == 1)? y0 : random.nextInt(10000);
+            LineSegment s = new LineSegment(P(x0, y0), P(x1, y1));
+
+            HashSet<Integer> expected = new HashSet();
+            for (Pair<Integer, Rectangle> p : data) {
+                if (RtreeTest.Crosses(x0, y0, x1, y1, p.getB())) {
+                    expected.add(p.getA());
+                }
+            }
+
+            RtreeCastIterator<Integer> it = tree.CastIterator(s, false);
+            ArrayList<Integer> found = new ArrayList();
+            double last = 0;
+            while (it.hasNext()) {
+                found.add(it.next());
+                Assert.assertTrue(it.getDistance() >= last);
+                last = it.getDistance();
+            }
+            Assert.assertEquals(found.size(), new HashSet(found).size());
+            Assert.assertEquals(expected, new HashSet(found));
+            Assert.assertEquals(found, tree.Cast(s));
+            Assert.assertEquals(found.isEmpty()? null : found.get(0), tree.CastFirst(s));
+            Assert.assertTrue(new HashSet(tree.Cast(s, true)).containsAll(found));
+        }
+        Assert.assertNull(new Rtree<Integer>().CastFirst(new LineSegment(P(0, 0), P(10, 10)), true));
+    }
+
+    /**
+     * Separating axis test of closed segment and closed rectangle.
+     */
+    private static boolean Crosses(int x0, int y0, int x1, int y1, Rectangle r) {
+        long rx0 = r.x, ry0 = r.y, rx1 = (long) r.x + r.width, ry1 = (long) r.y + r.height;
+        if (Math.max(x0, x1) < rx0 || Math.min(x0, x1) > rx1 || Math.max(y0, y1) < ry0 || Math.min(y0, y1) > ry1) {
+            return false;
+        }
+        long nx = y1 - y0, ny = x0 - x1;
+        long c = nx * x0 + ny * y0;
+        long[] d = {nx * rx0 + ny * ry0 - c, nx * rx1 + ny * ry0 - c, nx * rx0 + ny * ry1 - c, nx * rx1 + ny * ry1 - c};
+        long min = Math.min(Math.min(d[0], d[1]), Math.min(d[2], d[3]));
+        long max = Math.max(Math.max(d[0], d[1]), Math.max(d[2], d[3]));
+        return min <= 0 && max >= 0;
+    }
+
+    @Test
+    public void RelationTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(4000, 67);
+        data.add(new Pair(-1, new Rectangle(1000, 1000, 3000, 3000)));
+        Rtree<Integer> tree = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        for (Pair<Integer, Rectangle> p : data) {
+            tree.Insert(p.getA(), p.getB());
+        }
+
+        Random random = new Random(71);
+        for (int q = 0; q < 50; q++) {
+            Rectangle w = new Rectangle(random.nextInt(9000), random.nextInt(9000), 1 + random.nextInt(3000), 1 + random.nextInt(3000));
+            for (Rtree.Relation relation : Rtree.Relation.values()) {
+                HashSet<Integer> expected = new HashSet();
+                for (Pair<Integer, Rectangle> p : data) {
+                    Rectangle r = p.getB();
+                    boolean match = (relation == Rtree.Relation.INTERSECTS)? r.intersects(w) :
+                                    (relation == Rtree.Relation.CONTAINS)? r.contains(w) : w.contains(r);
+                    if (match) {
+                        expected.add(p.getA());
+                    }
+                }
+                ArrayList<Integer> found = tree.Find(w, relation);
+                Assert.assertEquals(found.size(), new HashSet(found).size());
+                Assert.assertEquals(expected, new HashSet(found));
+            }
+        }
+
+        // clearing windows one after another
+        HashSet<Integer> remaining = new HashSet();
+        for (Pair<Integer, Rectangle> p : data) {
+            remaining.add(p.getA());
+        }
+        for (int q = 0; q < 20; q++) {
+            Rectangle w = new Rectangle(random.nextInt(8000), random.nextInt(8000), 500 + random.nextInt(3000), 500 + random.nextInt(3000));
+            Rtree.Relation relation = Rtree.Relation.values()[q % 3];
+            HashSet<Integer> expected = new HashSet(tree.Find(w, relation));
+            ArrayList<Integer> removed = tree.DeleteAll(w, relation);
+            Assert.assertEquals(expected, new HashSet(removed));
+            Assert.assertEquals(expected.size(), removed.size());
+            remaining.removeAll(removed);
+            Assert.assertTrue(tree.Find(w, relation).isEmpty());
+            Assert.assertEquals(remaining, new HashSet(tree.Find(new Rectangle(0, 0, 20000, 20000))));
+        }
+        Assert.assertTrue(remaining.size() < 4000);
+
+        // tree stays usable
+        for (Pair<Integer, Rectangle> p : data) {
+            if (!remaining.contains(p.getA())) {
+                tree.Insert(p.getA(), p.getB());
+            }
+        }
+        Assert.assertEquals(data.size(), tree.Find(new Rectangle(0, 0, 20000, 20000)).size());
+        Assert.assertEquals(data.size(), tree.DeleteAll(new Rectangle(0, 0, 20000, 20000), Rtree.Relation.WITHIN).size());
+        Assert.assertTrue(tree.Find(new Rectangle(0, 0, 20000, 20000)).isEmpty());
+        tree.Insert(5, new Point(3, 3));
+        Assert.assertEquals(1, tree.Find(new Point(3, 3)).size());
+
+        // empty enteries inside subtrees taken whole are neither found nor removed
+        Rtree<Integer> covered = new Rtree(4, 8);
+        for (int i = 0; i < 300; i++) {
+            covered.Insert(i, new Rectangle(1000 + random.nextInt(100), 1000 + random.nextInt(100), 1 + random.nextInt(5), 1 + random.nextInt(5)));
+        }
+        Integer flat = -1, thin = -2;
+        covered.Insert(flat, new Rectangle(1050, 1050, 0, 5));
+        covered.Insert(thin, new Rectangle(1060, 1020, 5, 0));
+        Rectangle window = new Rectangle(900, 900, 300, 300);
+        covered.setAggregator(new RtreeAggregator<Integer, Long>() {
+            @Override
+            public Long summarize(Integer object) {
+                return 1L;
+            }
+
+            @Override
+            public Long combine(Long a, Long b) {
+                return a + b;
+            }
+        });
+        Assert.assertEquals(300, covered.Count(window));
+        Assert.assertEquals(Long.valueOf(300), covered.<Long>Aggregate(window));
+        Assert.assertEquals(covered.Find(new Rectangle(1050, 1050, 20, 20)).size(), covered.Count(new Rectangle(1050, 1050, 20, 20)));
+        for (Rtree.Relation relation : new Rtree.Relation[] {Rtree.Relation.INTERSECTS, Rtree.Relation.WITHIN}) {
+            HashSet<Integer> found = new HashSet(covered.Find(window, relation));
+            Assert.assertEquals(300, found.size());
+            Assert.assertFalse(found.contains(flat) || found.contains(thin));
+        }
+        Assert.assertEquals(new HashSet(covered.Find(window)), new HashSet(covered.DeleteAll(window, Rtree.Relation.INTERSECTS)));
+        Assert.assertTrue(covered.Find(new Rectangle(0, 0, 5000, 5000)).isEmpty());
+        Assert.assertEquals(2, covered.getStatistics().getSize());
+        covered.Delete(flat);
+        covered.Delete(thin);
+        Assert.assertEquals(0, covered.getStatistics().getSize());
+        Assert.assertTrue(covered.DeleteAll(new Rectangle(0, 0, 5000, 5000), Rtree.Relation.INTERSECTS).isEmpty());
+        covered.Insert(7, new Rectangle(1, 1, 2, 2));
+        Assert.assertEquals(1, covered.Find(new Rectangle(0, 0, 5000, 5000)).size());
+    }
+
+    @Test
+    public void MaskTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(4000, 73);
+        Rtree<Integer> tree = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        // queries filtering by categories must only read the tree, never aggregate it
+        final int[] summarized = new int[1];
+        tree.setAggregator(new RtreeAggregator<Integer, Integer>() {
+            @Override
+            public Integer summarize(Integer object) {
+                summarized[0]++;
+                return object;
+            }
+
+            @Override
+            public Integer combine(Integer a, Integer b) {
+                return a + b;
+            }
+        });
+        long[] masks = new long[data.size()];
+        for (Pair<Integer, Rectangle> p : data) {
+            int i = p.getA();
+            masks[i] = (i % 10 == 0)? Rtree.ALL_CATEGORIES : 1L << (i % 5);
+            if (masks[i] == Rtree.ALL_CATEGORIES) {
+                tree.Insert(p.getA(), p.getB());
+            }
+            else {
+                tree.Insert(p.getA(), p.getB(), masks[i]);
+            }
+        }
+
+        Random random = new Random(79);
+        for (int q = 0; q < 60; q++) {
+            if (q == 30) {
+                // changes of categories and structure between queries
+                for (int i = 0; i < data.size(); i += 7) {
+                    masks[i] = 1L << ((i + q) % 5);
+                    Assert.assertTrue(tree.setMask(data.get(i).getA(), masks[i]));
+                }
+                for (int i = 1; i < data.size(); i += 11) {
+                    tree.Delete(data.get(i).getA());
+                    masks[i] = 0;
+                }
+            }
+            Rectangle w = new Rectangle(random.nextInt(9000), random.nextInt(9000), 1 + random.nextInt(2000), 1 + random.nextInt(2000));
+            long mask = (1L << random.nextInt(5)) | (1L << random.nextInt(5));
+            HashSet<Integer> expected = new HashSet();
+            for (Pair<Integer, Rectangle> p : data) {
+                if ((masks[p.getA()] & mask) != 0 && p.getB().intersects(w)) {
+                    expected.add(p.getA());
+                }
+            }
+            ArrayList<Integer> found = tree.Find(w, mask);
+            Assert.assertEquals(found.size(), new HashSet(found).size());
+            Assert.assertEquals(expected, new HashSet(found));
+        }
+
+        Pair<Integer, Rectangle> p = data.get(3);
+        Point corner = p.getB().getLocation();
+        Assert.assertTrue(tree.Find(corner, masks[3]).contains(3));
+        Assert.assertFalse(tree.Find(corner, ~masks[3]).contains(3));
+        Assert.assertFalse(tree.setMask(-5, 1L));
+        Assert.assertEquals(0, summarized[0]);
+
+        // categories survive writing and reading, bulk loading and batches
+        RtreeCodec<Integer> codec = new RtreeCodec<Integer>() {
+            @Override
+            public void write(Integer object, DataOutput out) throws IOException {
+                out.writeInt(object);
+            }
+
+            @Override
+            public Integer read(DataInput in) throws IOException {
+                return in.readInt();
+            }
+        };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tree.Write(new DataOutputStream(bytes), codec);
+        Rtree<Integer> restored = new Rtree(Rtree.Mode.RSTAR);
+        restored.Read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), codec);
+
+        ArrayList<Pair<Integer, Rectangle>> kept = new ArrayList();
+        for (Pair<Integer, Rectangle> k : data) {
+            if (masks[k.getA()] != 0) {
+                kept.add(k);
+            }
+        }
+        long[] keptMasks = new long[kept.size()];
+        Rtree<Integer> loaded = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        Rtree<Integer> batched = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        RtreeBatch<Integer> batch = new RtreeBatch();
+        for (int i = 0; i < kept.size(); i++) {
+            keptMasks[i] = masks[kept.get(i).getA()];
+            batch.Insert(kept.get(i).getA(), kept.get(i).getB(), keptMasks[i]);
+        }
+        loaded.Load(kept, keptMasks);
+        batched.Apply(batch);
+
+        for (int q = 0; q < 30; q++) {
+            Rectangle w = new Rectangle(random.nextInt(9000), random.nextInt(9000), 1 + random.nextInt(2000), 1 + random.nextInt(2000));
+            long mask = 1L << random.nextInt(5);
+            HashSet<Integer> expected = new HashSet(tree.Find(w, mask));
+            Assert.assertEquals(expected, new HashSet(restored.Find(w, mask)));
+            Assert.assertEquals(expected, new HashSet(loaded.Find(w, mask)));
+            Assert.assertEquals(expected, new HashSet(batched.Find(w, mask)));
+        }
+
+        // streams written before categories were stored are refused
+        byte[] old = bytes.toByteArray();
+        old[7] = 1;
+        try {
+            restored.Read(new DataInputStream(new ByteArrayInputStream(old)), codec);
+            Assert.fail("Stream of older version was accepted.");
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void UpdateTest() throws Exception {
+        ArrayList<Pair<Integer, Rectangle>> data = RtreeTest.randomData(2000, 25);
+        Rtree<Mover> tree = new Rtree(4, 16, Rtree.Mode.RSTAR);
+        ArrayList<Mover> movers = new ArrayList();
+        for (Pair<Integer, Rectangle> p : data) {
+            Mover m = new Mover(p.getB());
+            movers.add(m);
+            tree.Insert(m, m.bounds);
+        }
+
+        Random random = new Random(26);
+        for (int tick = 0; tick < 20; tick++) {
+            for (Mover m : movers) {
+                // most objects move a little, some jump across the whole area
+                Rectangle r = new Rectangle(m.bounds);
+                if (random.nextInt(20) == 0) {
+                    r.setLocation(random.nextInt(10000), random.nextInt(10000));
+                }
+                else {
+                    r.translate(random.nextInt(11) - 5, random.nextInt(11) - 5);
+                }
+                m.bounds = r;
+                Assert.assertTrue(tree.Update(m, r));
+            }
+        }
+
+        for (int q = 0; q < 100; q++) {
+            Rectangle w = new Rectangle(random.nextInt(10000), random.nextInt(10000),
+                                        1 + random.nextInt(800), 1 + random.nextInt(800));
+            HashSet<Mover> expected = new HashSet();
+            for (Mover m : movers) {
+                if (w.intersects(m.bounds)) {
+                    expected.add(m);
+                }
+            }
+            Assert.assertEquals(expected, new HashSet(tree.Find(w)));
+        }
+
+        Mover m = movers.get(0);
+        tree.Delete(m, m.bounds);
+        Assert.assertFalse(tree.Update(m, new Rectangle(0, 0, 5, 5)));
+    }
+
+    static class Mover implements RtreeNodeLinker {
+        private Rectangle bounds;
+        private RtreeNode node;
+
+        Mover(Rectangle bounds) {
+            this.bounds = bounds;
+        }
+
+        @Override
+        public void setNode(RtreeNode node) {
+            this.node = node;
+        }
+
+        @Override
+        public RtreeNode getNode() {
+            return this.node;
+        }
+
+        @Override
+        public Rectangle getBoundingBox() {
+            return this.bounds;
+        }
+    }
+
+    static ArrayList<Pair<Integer, Rectangle>> randomData(int count, long seed) {
+        Random random = new Random(seed);
+        ArrayList<Pair<Integer, Rectangle>> data = new ArrayList();
+        for (int i = 0; i < count; i++) {
+            Rectangle r = new Rectangle(random.nextInt(10000), random.nextInt(10000),
+                                        1 + random.nextInt(50), 1 + random.nextInt(50));
+            data.add(new Pair(i, r));
+        }
+        return data;
+    }
+
+    static void assertQueries(Rtree<Integer> tree, ArrayList<Pair<Integer, Rectangle>> data, long seed) {
+        Random random = new Random(seed);
+        for (int q = 0; q < 100; q++) {
+            Rectangle w = new Rectangle(random.nextInt(10000), random.nextInt(10000),
+                                        1 + random.nextInt(800), 1 + random.nextInt(800));
+            HashSet<Integer> expected = new HashSet();
+            for (Pair<Integer, Rectangle> p : data) {
+                if (w.intersects(p.getB())) {
+                    expected.add(p.getA());
+                }
+            }
+            ArrayList<Integer> found = tree.Find(w);
+            Assert.assertEquals(expected.size(), found.size());
+            Assert.assertEquals(expected, new HashSet(found));
+        }
+    }
+
 }